@@ -12,6 +12,41 @@ public final class Constants {
      */
     public static final String SIGNATURE_ALGORITHM = "Ed25519";
 
+    /**
+     * The extension appended to a file name to name its detached signature.
+     */
+    public static final String SIGNATURE_EXTENSION = ".sig";
+
+    /**
+     * The digest algorithm used to compute key fingerprints.
+     */
+    public static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+    /**
+     * The size of the buffer used when streaming file content.
+     */
+    public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The default number of files whose directories a batch writer flushes together with {@code FULL} durability.
+     */
+    public static final int BATCH_SYNC_GROUP_SIZE = 256;
+
+    /**
+     * The digest algorithm used to identify signed contents in the signature log.
+     */
+    public static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The size in bytes above which the signature log seals its active segment and starts a new one.
+     */
+    public static final long LOG_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The number of entries appended to the signature log between two signed checkpoints.
+     */
+    public static final int LOG_CHECKPOINT_INTERVAL = 1024;
+
     /**
      * The character set used for encoding and decoding strings.
      */
@@ -0,0 +1,371 @@
+package ch.heigvd.cachet.batch;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.service.CachetService.SignedContent;
+import ch.heigvd.cachet.utils.BatchFileWriter;
+import ch.heigvd.cachet.utils.Durability;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Signs many files in one run, writing a detached {@code .sig} file next to each of them.
+ * <p>
+ * With deduplication, byte-identical files are signed once and the signature is reused for every copy.
+ * Identical files are found in three stages, each one only applied to the candidates left by the previous:
+ * files are grouped by size, then by a CRC32C of their content, then confirmed by a byte-by-byte comparison.
+ * A copy modified after it was grouped is signed on its own.
+ * <p>
+ * With a {@link SignatureLog}, every signature made is also appended to the log, once per distinct content.
+ */
+public final class BatchSigner {
+    /**
+     * Outcome of a batch run.
+     *
+     * @param files       the number of files signed
+     * @param signatures  the number of signature operations performed
+     * @param bytesSigned the number of bytes fed to the signature engine
+     * @param bytesSaved  the number of bytes that did not need to be signed thanks to deduplication
+     */
+    public record Summary(int files, int signatures, long bytesSigned, long bytesSaved) {
+        /**
+         * Returns the number of signature operations avoided thanks to deduplication.
+         *
+         * @return the number of operations
+         */
+        public int signaturesSaved() {
+            return files - signatures;
+        }
+    }
+
+    /**
+     * A file as seen when it was grouped, to detect a modification before its group signature is reused.
+     *
+     * @param file             the file
+     * @param size             its size in bytes
+     * @param lastModifiedTime its modification time
+     */
+    record FileVersion(Path file, long size, FileTime lastModifiedTime) {
+        /**
+         * Reads the current size and modification time of a file.
+         *
+         * @param file the file
+         * @return the version
+         * @throws FileOperationException if the file cannot be read
+         */
+        static FileVersion of(final Path file) {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileVersion(file, attributes.size(), attributes.lastModifiedTime());
+            } catch (IOException e) {
+                throw new FileOperationException("Erreur lors de la lecture du fichier : " + file, e);
+            }
+        }
+
+        /**
+         * Tells whether the file still has the recorded size and modification time.
+         *
+         * @return false if the file was modified or removed
+         */
+        boolean isUnchanged() {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return attributes.size() == size && attributes.lastModifiedTime().equals(lastModifiedTime);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private final CachetService service;
+    private final boolean deduplicate;
+    private final Durability durability;
+    private final SignatureLog log;
+
+    /**
+     * Creates a batch signer.
+     *
+     * @param service     the service holding the private key, whose executor runs the signatures
+     * @param deduplicate true to sign identical contents only once
+     * @param durability  the durability of the signature writes
+     */
+    public BatchSigner(final CachetService service, final boolean deduplicate, final Durability durability) {
+        this(service, deduplicate, durability, null);
+    }
+
+    /**
+     * Creates a batch signer recording its signatures in a log.
+     *
+     * @param service     the service holding the private key and the public key, whose executor runs the signatures
+     * @param deduplicate true to sign identical contents only once
+     * @param durability  the durability of the signature writes
+     * @param log         the log the signatures are appended to, or null
+     * @throws KeyOperationException if a log is given but the service has no public key to fingerprint
+     */
+    public BatchSigner(final CachetService service, final boolean deduplicate, final Durability durability,
+                       final SignatureLog log) {
+        if (log != null && service.getKeyFingerprint() == null) {
+            throw new KeyOperationException("La clé publique est requise pour inscrire les signatures au journal");
+        }
+        this.service = service;
+        this.deduplicate = deduplicate;
+        this.durability = durability;
+        this.log = log;
+    }
+
+    /**
+     * Lists the files to sign under the given paths: regular files are kept, directories are walked recursively.
+     * Signature files, hidden files and empty files are skipped.
+     *
+     * @param paths the files and directories
+     * @return the files to sign, without duplicate paths
+     * @throws FileOperationException if a path cannot be read
+     */
+    public static List<Path> collectFiles(final List<Path> paths) {
+        final Set<Path> files = new LinkedHashSet<>();
+        for (final Path path : paths) {
+            if (!Files.exists(path)) {
+                throw new FileOperationException("Le fichier n'existe pas : " + path);
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile)
+                        .filter(BatchSigner::isSignable)
+                        .forEach(file -> files.add(file.toAbsolutePath().normalize()));
+            } catch (IOException e) {
+                throw new FileOperationException("Erreur lors du parcours de : " + path, e);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Signs the given files, writing each signature, Base64-encoded, to {@code <file>.sig}.
+     *
+     * @param files the files to sign
+     * @return the summary of the run
+     * @throws CachetException if a file cannot be read, signed or written
+     */
+    public Summary sign(final List<Path> files) {
+        return signGroups(deduplicate ? groupIdentical(files)
+                : files.stream().map(file -> List.of(FileVersion.of(file))).toList());
+    }
+
+    /**
+     * Signs groups of identical files. The signature of the first file of a group is reused for the others,
+     * unless one of them, or the first file itself, was modified since the group was made: such a copy is then
+     * signed on its own.
+     *
+     * @param groups the groups, each holding at least one file
+     * @return the summary of the run
+     * @throws CachetException if a file cannot be read, signed or written
+     */
+    Summary signGroups(final List<List<FileVersion>> groups) {
+        final List<CompletableFuture<Summary>> pending = new ArrayList<>();
+        try (BatchFileWriter writer = new BatchFileWriter(durability)) {
+            for (final List<FileVersion> group : groups) {
+                final FileVersion reference = group.get(0);
+                pending.add(signAndWrite(reference, writer).thenCompose(signed -> {
+                    final byte[] encoded = Base64.getEncoder().encode(signed.signature());
+                    final boolean reusable = reference.isUnchanged();
+                    final List<CompletableFuture<Summary>> copies = new ArrayList<>();
+                    for (final FileVersion copy : group.subList(1, group.size())) {
+                        if (reusable && copy.isUnchanged()) {
+                            writer.write(encoded, copy.file() + Constants.SIGNATURE_EXTENSION);
+                            copies.add(CompletableFuture.completedFuture(new Summary(1, 0, 0, copy.size())));
+                        } else {
+                            copies.add(signAndWrite(copy, writer)
+                                    .thenApply(ignored -> new Summary(1, 1, copy.size(), 0)));
+                        }
+                    }
+                    return sum(new Summary(1, 1, reference.size(), 0), copies);
+                }));
+            }
+            return sum(new Summary(0, 0, 0, 0), pending).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CachetException cachetException) {
+                throw cachetException;
+            }
+            throw new CachetException("Erreur lors de la signature par lot : " + e.getCause().getMessage(), e);
+        }
+    }
+
+    /**
+     * Signs a file, writes its signature and appends it to the log, if any.
+     *
+     * @param file   the file
+     * @param writer the writer of the signature files
+     * @return the signature, completed once written
+     */
+    private CompletableFuture<SignedContent> signAndWrite(final FileVersion file, final BatchFileWriter writer) {
+        // the digest is only needed for the log, and is then taken from the signed bytes
+        final CompletableFuture<SignedContent> signing = log == null
+                ? service.signAsync(file.file()).thenApply(signature -> new SignedContent(signature, null))
+                : service.signWithDigestAsync(file.file());
+        return signing.thenApply(signed -> {
+            writer.write(Base64.getEncoder().encode(signed.signature()), file.file() + Constants.SIGNATURE_EXTENSION);
+            if (log != null) {
+                log.append(signed.digest(), service.getKeyFingerprint(), signed.signature());
+            }
+            return signed;
+        });
+    }
+
+    /**
+     * Adds up the summaries of several parts of a run.
+     *
+     * @param initial the summary to start from
+     * @param parts   the summaries of the parts
+     * @return the total, completed once every part is
+     */
+    private static CompletableFuture<Summary> sum(final Summary initial, final List<CompletableFuture<Summary>> parts) {
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            Summary total = initial;
+            for (final CompletableFuture<Summary> part : parts) {
+                final Summary summary = part.join();
+                total = new Summary(total.files() + summary.files(), total.signatures() + summary.signatures(),
+                        total.bytesSigned() + summary.bytesSigned(), total.bytesSaved() + summary.bytesSaved());
+            }
+            return total;
+        });
+    }
+
+    /**
+     * Groups the files having byte-identical contents, keeping the order of first appearance.
+     *
+     * The size and modification time of each file are recorded before its content is read.
+     *
+     * @param files the files to group
+     * @return the groups, each holding at least one file
+     * @throws FileOperationException if a file cannot be read
+     */
+    static List<List<FileVersion>> groupIdentical(final List<Path> files) {
+        final Map<Long, List<FileVersion>> bySize = new LinkedHashMap<>();
+        for (final Path file : files) {
+            final FileVersion version = FileVersion.of(file);
+            bySize.computeIfAbsent(version.size(), size -> new ArrayList<>()).add(version);
+        }
+
+        final List<List<FileVersion>> groups = new ArrayList<>();
+        for (final List<FileVersion> sameSize : bySize.values()) {
+            if (sameSize.size() == 1) {
+                groups.add(sameSize);
+                continue;
+            }
+            final Map<Long, List<FileVersion>> byHash = new LinkedHashMap<>();
+            for (final FileVersion file : sameSize) {
+                byHash.computeIfAbsent(checksum(file.file()), hash -> new ArrayList<>()).add(file);
+            }
+            for (final List<FileVersion> sameHash : byHash.values()) {
+                groups.addAll(sameHash.size() == 1 ? List.of(sameHash) : splitByContent(sameHash));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Splits files of equal size and checksum into groups of byte-identical contents.
+     * Checksums may collide, so every file is compared against the first file of each group.
+     *
+     * @param candidates the files to split
+     * @return the groups
+     */
+    private static List<List<FileVersion>> splitByContent(final List<FileVersion> candidates) {
+        final List<List<FileVersion>> groups = new ArrayList<>();
+        for (final FileVersion file : candidates) {
+            List<FileVersion> match = null;
+            for (final List<FileVersion> group : groups) {
+                if (mismatch(group.get(0).file(), file.file()) == -1) {
+                    match = group;
+                    break;
+                }
+            }
+            if (match == null) {
+                match = new ArrayList<>();
+                groups.add(match);
+            }
+            match.add(file);
+        }
+        return groups;
+    }
+
+    /**
+     * Computes the CRC32C of the content of a file, a hardware-accelerated checksum on common CPUs.
+     *
+     * @param file the file
+     * @return the checksum
+     */
+    private static long checksum(final Path file) {
+        final CRC32C crc = new CRC32C();
+        final byte[] buffer = new byte[Constants.STREAM_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("Erreur lors de la lecture du fichier : " + file, e);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Compares the contents of two files.
+     *
+     * @param first  the first file
+     * @param second the second file
+     * @return the position of the first differing byte, or -1 if the contents are identical
+     */
+    private static long mismatch(final Path first, final Path second) {
+        try {
+            return Files.mismatch(first, second);
+        } catch (IOException e) {
+            throw new FileOperationException("Erreur lors de la comparaison de " + first + " et " + second, e);
+        }
+    }
+
+    /**
+     * Returns the size of a file.
+     *
+     * @param file the file
+     * @return the size in bytes
+     */
+    private static long size(final Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new FileOperationException("Erreur lors de la lecture du fichier : " + file, e);
+        }
+    }
+
+    /**
+     * Tells whether a file should be signed: signature files, hidden files (including the temporary files of
+     * atomic writes) and empty files are not.
+     *
+     * @param file the file
+     * @return true if the file should be signed
+     */
+    private static boolean isSignable(final Path file) {
+        final String name = file.getFileName().toString();
+        return !name.endsWith(Constants.SIGNATURE_EXTENSION) && !name.startsWith(".") && size(file) > 0;
+    }
+}
@@ -0,0 +1,106 @@
+package ch.heigvd.cachet.batch;
+
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Persistent record of the files already signed in a directory, so a restart does not sign them again.
+ * <p>
+ * Each file name is mapped to the size and modification time it had when it was signed. The record is stored as a
+ * properties file, written atomically by {@link #save()} only when it changed.
+ * <p>
+ * This class is thread-safe.
+ */
+final class SignatureState {
+    private final Path file;
+    private final Properties entries = new Properties();
+    private boolean dirty;
+
+    /**
+     * Loads the state from a file, starting empty if the file does not exist.
+     *
+     * @param file the state file
+     * @throws FileOperationException if the file exists but cannot be read
+     */
+    SignatureState(final Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                entries.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new FileOperationException("Impossible de lire le fichier d'état : " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Tells whether a file was signed with its current size and modification time.
+     *
+     * @param name             the file name
+     * @param size             the current size
+     * @param lastModifiedTime the current modification time in milliseconds
+     * @return true if the recorded signature is up to date
+     */
+    synchronized boolean isUpToDate(final String name, final long size, final long lastModifiedTime) {
+        return format(size, lastModifiedTime).equals(entries.getProperty(name));
+    }
+
+    /**
+     * Records that a file was signed.
+     *
+     * @param name             the file name
+     * @param size             the size that was signed
+     * @param lastModifiedTime the modification time that was signed, in milliseconds
+     */
+    synchronized void record(final String name, final long size, final long lastModifiedTime) {
+        entries.setProperty(name, format(size, lastModifiedTime));
+        dirty = true;
+    }
+
+    /**
+     * Forgets a file, e.g. because it was deleted.
+     *
+     * @param name the file name
+     */
+    synchronized void remove(final String name) {
+        dirty |= entries.remove(name) != null;
+    }
+
+    /**
+     * Writes the state to its file if it changed since the last save.
+     *
+     * @throws FileOperationException if the file cannot be written
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            entries.store(bytes, "Cachet watch state: name=size:lastModifiedMillis");
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de sérialiser l'état", e);
+        }
+        FileIOUtils.writeToFile(bytes.toByteArray(), file.toString(), Durability.FILE);
+        dirty = false;
+    }
+
+    /**
+     * Formats a state entry.
+     *
+     * @param size             the size of the file
+     * @param lastModifiedTime the modification time in milliseconds
+     * @return the entry value
+     */
+    private static String format(final long size, final long lastModifiedTime) {
+        return size + ":" + lastModifiedTime;
+    }
+}
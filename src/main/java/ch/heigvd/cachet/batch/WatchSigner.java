@@ -0,0 +1,316 @@
+package ch.heigvd.cachet.batch;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.service.CachetService.SignedContent;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Signs the files landing in a drop directory as soon as they are complete.
+ * <p>
+ * A {@link WatchService} reports created, modified and deleted files. A file is considered complete once no event
+ * was received for it during the debounce period and its size and modification time did not change between two
+ * consecutive checks; the JDK offers no portable way to know whether another process still has it open.
+ * Complete files are signed on the executor of the {@link CachetService}, and their signature is written to
+ * {@code <file>.sig}.
+ * <p>
+ * A {@link SignatureState} file remembers the size and modification time of every signed file, so files whose
+ * signature is up to date are not signed again after a restart. A deleted file is forgotten only if it is still
+ * missing after the debounce period, so a file replaced by an identical one is not signed again. With a
+ * {@link SignatureLog}, every signature made is also appended to the log.
+ */
+public final class WatchSigner implements AutoCloseable {
+    /**
+     * A file waiting to become stable.
+     *
+     * @param lastChange       the {@link System#nanoTime()} instant of the last event or observed change
+     * @param size             the size observed at the last check, -1 before the first check
+     * @param lastModifiedTime the modification time observed at the last check
+     */
+    private record Candidate(long lastChange, long size, long lastModifiedTime) {}
+
+    private final CachetService service;
+    private final Path directory;
+    private final long debounceNanos;
+    private final Durability durability;
+    private final SignatureState state;
+    private final PrintStream log;
+    private final SignatureLog signatureLog;
+    private final WatchService watchService;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Path, Candidate> candidates = new ConcurrentHashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private boolean closed;
+
+    /**
+     * Creates a watcher and registers it on the directory. Watching starts with {@link #run()}.
+     *
+     * @param service    the service holding the private key, whose executor runs the signatures
+     * @param directory  the directory to watch
+     * @param debounce   the quiet period after which a file is checked for stability
+     * @param durability the durability of the signature writes
+     * @param stateFile  the file recording the signed files
+     * @param log        the stream progress messages are printed to
+     * @throws FileOperationException if the directory cannot be watched
+     */
+    public WatchSigner(final CachetService service, final Path directory, final Duration debounce,
+                       final Durability durability, final Path stateFile, final PrintStream log) {
+        this(service, directory, debounce, durability, stateFile, log, null);
+    }
+
+    /**
+     * Creates a watcher recording its signatures in a log, and registers it on the directory.
+     *
+     * @param service      the service holding the private key and the public key
+     * @param directory    the directory to watch
+     * @param debounce     the quiet period after which a file is checked for stability
+     * @param durability   the durability of the signature writes
+     * @param stateFile    the file recording the signed files
+     * @param log          the stream progress messages are printed to
+     * @param signatureLog the log the signatures are appended to, or null
+     * @throws FileOperationException if the directory cannot be watched
+     * @throws KeyOperationException  if a log is given but the service has no public key to fingerprint
+     */
+    public WatchSigner(final CachetService service, final Path directory, final Duration debounce,
+                       final Durability durability, final Path stateFile, final PrintStream log,
+                       final SignatureLog signatureLog) {
+        if (signatureLog != null && service.getKeyFingerprint() == null) {
+            throw new KeyOperationException("La clé publique est requise pour inscrire les signatures au journal");
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new FileOperationException("Le répertoire à surveiller n'existe pas : " + directory);
+        }
+        this.service = service;
+        this.directory = directory.toAbsolutePath().normalize();
+        this.debounceNanos = debounce.toNanos();
+        this.durability = durability;
+        this.state = new SignatureState(stateFile);
+        this.log = log;
+        this.signatureLog = signatureLog;
+        try {
+            this.watchService = directory.getFileSystem().newWatchService();
+            this.directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de surveiller le répertoire : " + directory, e);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cachet-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Watches the directory until {@link #stop()} or {@link #close()} is called. Files already present are
+     * checked first.
+     */
+    public void run() {
+        final long period = Math.max(TimeUnit.MILLISECONDS.toNanos(50), debounceNanos / 4);
+        scheduler.scheduleWithFixedDelay(this::checkCandidates, period, period, TimeUnit.NANOSECONDS);
+        rescan();
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                    } else {
+                        touch(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    log.println("Le répertoire surveillé n'est plus accessible : " + directory);
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stop() or close() was called
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes {@link #run()} return, without waiting for the signatures in progress. Unlike {@link #close()},
+     * it can be called from any thread, such as a shutdown hook, while the thread running the watcher closes it.
+     */
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+            // the watch service is being discarded anyway
+        }
+    }
+
+    /**
+     * Stops watching, waits for the signatures in progress and saves the state. Calling it again has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stop();
+        // a check in progress may still submit files, so let it finish before collecting the pending signatures
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.println("La vérification des fichiers ne s'est pas terminée à temps");
+            }
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(1, TimeUnit.MINUTES);
+        } catch (ExecutionException | TimeoutException e) {
+            log.println("Certaines signatures n'ont pas pu être terminées : " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state.save();
+    }
+
+    /**
+     * Adds every file of the directory to the candidates, e.g. at startup or after events were lost.
+     */
+    private void rescan() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(this::touch);
+        } catch (IOException e) {
+            log.println("Erreur lors du parcours du répertoire : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records an event on a file, restarting its debounce period.
+     *
+     * @param file the file
+     */
+    private void touch(final Path file) {
+        final String name = file.getFileName().toString();
+        if (name.endsWith(Constants.SIGNATURE_EXTENSION) || name.startsWith(".")) {
+            return;
+        }
+        candidates.put(file, new Candidate(System.nanoTime(), -1, -1));
+    }
+
+    /**
+     * Signs the candidates that were quiet for the debounce period and whose attributes are stable,
+     * then saves the state if it changed.
+     */
+    private void checkCandidates() {
+        try {
+            final long now = System.nanoTime();
+            for (final Map.Entry<Path, Candidate> entry : candidates.entrySet()) {
+                final Path file = entry.getKey();
+                final Candidate candidate = entry.getValue();
+                if (now - candidate.lastChange() < debounceNanos || inFlight.contains(file)) {
+                    continue;
+                }
+                final BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // still deleted after the debounce period, so not merely replaced
+                    if (candidates.remove(file, candidate)) {
+                        state.remove(file.getFileName().toString());
+                    }
+                    continue;
+                } catch (IOException e) {
+                    candidates.remove(file, candidate);
+                    continue;
+                }
+                final long size = attributes.size();
+                final long lastModifiedTime = attributes.lastModifiedTime().toMillis();
+                if (!attributes.isRegularFile() || size == 0) {
+                    candidates.remove(file, candidate);
+                } else if (size != candidate.size() || lastModifiedTime != candidate.lastModifiedTime()) {
+                    candidates.replace(file, candidate, new Candidate(now, size, lastModifiedTime));
+                } else if (candidates.remove(file, candidate)) {
+                    submit(file, size, lastModifiedTime);
+                }
+            }
+            state.save();
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic task
+            log.println("Erreur lors de la vérification des fichiers : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Signs a stable file, unless its signature is already up to date.
+     *
+     * @param file             the file
+     * @param size             the stable size
+     * @param lastModifiedTime the stable modification time
+     */
+    private void submit(final Path file, final long size, final long lastModifiedTime) {
+        final String name = file.getFileName().toString();
+        final Path signatureFile = file.resolveSibling(name + Constants.SIGNATURE_EXTENSION);
+        if (state.isUpToDate(name, size, lastModifiedTime) && Files.exists(signatureFile)) {
+            return;
+        }
+
+        inFlight.add(file);
+        // the digest is only needed for the log, and is then taken from the signed bytes
+        final CompletableFuture<SignedContent> signing = signatureLog == null
+                ? service.signAsync(file).thenApply(signature -> new SignedContent(signature, null))
+                : service.signWithDigestAsync(file);
+        final CompletableFuture<Void> future = signing.thenAccept(signed -> {
+            FileIOUtils.writeToFile(Base64.getEncoder().encode(signed.signature()), signatureFile.toString(),
+                    durability);
+            if (isUnchanged(file, size, lastModifiedTime)) {
+                if (signatureLog != null) {
+                    signatureLog.append(signed.digest(), service.getKeyFingerprint(), signed.signature());
+                }
+                state.record(name, size, lastModifiedTime);
+                log.println("Signé : " + file);
+            } else {
+                // modified while being signed: sign again once stable
+                touch(file);
+            }
+        });
+        pending.add(future);
+        future.whenComplete((result, error) -> {
+            inFlight.remove(file);
+            pending.remove(future);
+            if (error != null) {
+                final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                log.println("Échec de la signature de " + file + " : " +
+                        (cause instanceof CachetException ? cause.getMessage() : cause));
+            }
+        });
+    }
+
+    /**
+     * Tells whether a file still has the given size and modification time.
+     *
+     * @param file             the file
+     * @param size             the expected size
+     * @param lastModifiedTime the expected modification time in milliseconds
+     * @return true if the file is unchanged
+     */
+    private static boolean isUnchanged(final Path file, final long size, final long lastModifiedTime) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModifiedTime;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
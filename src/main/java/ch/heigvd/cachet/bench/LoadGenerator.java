@@ -0,0 +1,446 @@
+package ch.heigvd.cachet.bench;
+
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+import ch.heigvd.cachet.utils.SignatureUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sustained load generator for the signing path.
+ * <p>
+ * A fixed number of workers sign payloads drawn from a size distribution for a given duration, either from memory
+ * ({@link Mode#MEMORY}, {@link SignatureUtils} only) or through the files ({@link Mode#FILE}: the payload is read
+ * with {@link FileIOUtils}, signed, and its Base64 signature written back). Latencies, throughput per interval,
+ * allocation rate of the workers and garbage collections are reported.
+ */
+public final class LoadGenerator {
+    /**
+     * What a single operation covers.
+     */
+    public enum Mode {
+        /**
+         * Signing of an in-memory payload.
+         */
+        MEMORY,
+
+        /**
+         * Reading of the payload file, signing, then writing of the signature file.
+         */
+        FILE
+    }
+
+    /**
+     * Outcome of a measured run.
+     *
+     * @param operations     the number of operations completed
+     * @param elapsed        the measured duration
+     * @param latencies      the latency of each operation
+     * @param allocatedBytes the bytes allocated by the workers, -1 if the JVM cannot measure it
+     * @param gcCount        the number of garbage collections
+     * @param gcTime         the accumulated garbage collection time
+     * @param signatureBytes the accumulated length of the signatures made
+     * @param maxSignature   the length of the longest signature made
+     */
+    public record Report(long operations, Duration elapsed, LatencyHistogram latencies, long allocatedBytes,
+                         long gcCount, Duration gcTime, long signatureBytes, int maxSignature) {
+        /**
+         * Returns the average throughput.
+         *
+         * @return the number of operations per second
+         */
+        public double operationsPerSecond() {
+            return operations / (elapsed.toNanos() / 1e9);
+        }
+
+        /**
+         * Returns the average signature length, which varies between signatures for DER-encoded schemes.
+         *
+         * @return the average length in bytes, 0 if no operation completed
+         */
+        public double averageSignatureLength() {
+            return operations == 0 ? 0 : (double) signatureBytes / operations;
+        }
+    }
+
+    private final PrivateKey privateKey;
+    private final PayloadDistribution distribution;
+    private final Mode mode;
+    private final Durability durability;
+    private final int threads;
+    private final Path workDirectory;
+    private byte[][] payloads;
+    private String[] payloadFiles;
+
+    /**
+     * Creates a load generator.
+     *
+     * @param privateKey    the key used for signing
+     * @param distribution  the payload sizes
+     * @param mode          what a single operation covers
+     * @param durability    the durability of signature writes in {@link Mode#FILE}
+     * @param threads       the number of concurrent workers
+     * @param workDirectory the directory holding payload and signature files in {@link Mode#FILE}
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    public LoadGenerator(final PrivateKey privateKey, final PayloadDistribution distribution, final Mode mode,
+                         final Durability durability, final int threads, final Path workDirectory) {
+        if (privateKey == null || distribution == null || mode == null || durability == null) {
+            throw new IllegalArgumentException("Les paramètres du banc d'essai ne peuvent pas être nuls");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Le nombre de threads doit être strictement positif");
+        }
+        this.privateKey = privateKey;
+        this.distribution = distribution;
+        this.mode = mode;
+        this.durability = durability;
+        this.threads = threads;
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * Runs a warmup phase, then a measured phase printing a line per interval.
+     *
+     * @param warmup   the duration of the unmeasured warmup
+     * @param duration the duration of the measured phase
+     * @param interval the period of the progress lines
+     * @param out      the stream progress lines are printed to
+     * @return the report of the measured phase
+     * @throws CachetException if an operation fails
+     */
+    public Report run(final Duration warmup, final Duration duration, final Duration interval, final PrintStream out) {
+        prepare();
+        try {
+            if (!warmup.isZero()) {
+                out.printf("Préchauffage pendant %d s...%n", warmup.toSeconds());
+                runPhase(warmup, interval, null);
+            }
+            out.printf("Mesure pendant %d s avec %d threads (%s)...%n", duration.toSeconds(), threads, mode);
+            return runPhase(duration, interval, out);
+        } finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Runs the workers for a given duration.
+     *
+     * @param duration the duration of the phase
+     * @param interval the period of the progress lines
+     * @param out      the stream progress lines are printed to, or null for a silent phase
+     * @return the report of the phase
+     */
+    private Report runPhase(final Duration duration, final Duration interval, final PrintStream out) {
+        final LatencyHistogram total = new LatencyHistogram();
+        final AtomicReference<LatencyHistogram> window = new AtomicReference<>(new LatencyHistogram());
+        final LongAdder operations = new LongAdder();
+        final LongAdder signatureBytes = new LongAdder();
+        final LongAccumulator maxSignature = new LongAccumulator(Math::max, 0);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long[] workerIds = new long[threads];
+        final long[] allocatedAtExit = new long[threads];
+        final CountDownLatch started = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final long[] deadline = new long[1];
+            for (int worker = 0; worker < threads; worker++) {
+                final int id = worker;
+                pool.execute(() -> {
+                    workerIds[id] = Thread.currentThread().threadId();
+                    started.countDown();
+                    try {
+                        go.await();
+                        work(id, deadline[0], total, window, operations, signatureBytes, maxSignature, failure);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        // terminated threads no longer report their allocations, so measure before exiting
+                        allocatedAtExit[id] = allocatedBytes(threadBean, new long[] {workerIds[id]});
+                    }
+                });
+            }
+            awaitQuietly(started);
+
+            final long gcCountBefore = gcCount();
+            final long gcTimeBefore = gcTime();
+            final long allocatedBefore = allocatedBytes(threadBean, workerIds);
+            final long start = System.nanoTime();
+            deadline[0] = start + duration.toNanos();
+            go.countDown();
+
+            long previousOperations = 0;
+            long previousAllocated = allocatedBefore;
+            long previousTick = start;
+            while (failure.get() == null && System.nanoTime() < deadline[0]) {
+                sleepUntil(Math.min(previousTick + interval.toNanos(), deadline[0]));
+                final long now = System.nanoTime();
+                final long currentOperations = operations.sum();
+                final long currentAllocated = allocatedBytes(threadBean, workerIds);
+                final LatencyHistogram latencies = window.getAndSet(new LatencyHistogram());
+                if (out != null) {
+                    final double seconds = (now - previousTick) / 1e9;
+                    out.printf("t=%6.1fs  ops/s=%10.1f  p50=%8.1fµs  p99=%8.1fµs  alloc=%s%n",
+                            (now - start) / 1e9,
+                            (currentOperations - previousOperations) / seconds,
+                            latencies.getPercentile(0.50) / 1e3,
+                            latencies.getPercentile(0.99) / 1e3,
+                            formatRate(currentAllocated, previousAllocated, seconds));
+                }
+                previousOperations = currentOperations;
+                previousAllocated = currentAllocated;
+                previousTick = now;
+            }
+
+            pool.shutdown();
+            awaitTermination(pool);
+            final long elapsed = System.nanoTime() - start;
+
+            if (failure.get() != null) {
+                final Throwable cause = failure.get();
+                if (cause instanceof CachetException cachetException) {
+                    throw cachetException;
+                }
+                throw new CachetException("Erreur pendant le banc d'essai : " + cause.getMessage(), cause);
+            }
+
+            long allocatedAfter = 0;
+            for (final long allocated : allocatedAtExit) {
+                allocatedAfter += allocated;
+            }
+            return new Report(total.getCount(), Duration.ofNanos(elapsed), total,
+                    allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore,
+                    gcCount() - gcCountBefore, Duration.ofMillis(gcTime() - gcTimeBefore),
+                    signatureBytes.sum(), maxSignature.intValue());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Loop of a worker, running operations until the deadline or the first failure.
+     *
+     * @param worker         the index of the worker
+     * @param deadline       the {@link System#nanoTime()} instant at which to stop
+     * @param total          the histogram of the whole phase
+     * @param window         the histogram of the current interval
+     * @param operations     the counter of completed operations
+     * @param signatureBytes the accumulated length of the signatures
+     * @param maxSignature   the length of the longest signature
+     * @param failure        the first failure of any worker
+     */
+    private void work(final int worker, final long deadline, final LatencyHistogram total,
+                      final AtomicReference<LatencyHistogram> window, final LongAdder operations,
+                      final LongAdder signatureBytes, final LongAccumulator maxSignature,
+                      final AtomicReference<Throwable> failure) {
+        final Random random = ThreadLocalRandom.current();
+        final String signatureFile = mode == Mode.FILE
+                ? workDirectory.resolve("worker-" + worker + ".sig").toString()
+                : null;
+        try {
+            while (failure.get() == null) {
+                final long start = System.nanoTime();
+                if (start >= deadline) {
+                    return;
+                }
+                final int index = distribution.pick(random);
+                final byte[] signature;
+                if (mode == Mode.MEMORY) {
+                    signature = SignatureUtils.sign(payloads[index], privateKey);
+                } else {
+                    final byte[] data = FileIOUtils.fileToBytes(payloadFiles[index]);
+                    signature = SignatureUtils.sign(data, privateKey);
+                    FileIOUtils.writeToFile(Base64.getEncoder().encode(signature), signatureFile, durability);
+                }
+                final long latency = System.nanoTime() - start;
+                total.record(latency);
+                window.get().record(latency);
+                operations.increment();
+                signatureBytes.add(signature.length);
+                maxSignature.accumulate(signature.length);
+            }
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Generates the random payloads, and writes them to files in {@link Mode#FILE}.
+     */
+    private void prepare() {
+        final int[] sizes = distribution.getSizes();
+        final Random random = new Random(42);
+        payloads = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            payloads[i] = new byte[sizes[i]];
+            random.nextBytes(payloads[i]);
+        }
+        if (mode != Mode.FILE) {
+            return;
+        }
+        payloadFiles = new String[sizes.length];
+        try {
+            Files.createDirectories(workDirectory);
+            for (int i = 0; i < sizes.length; i++) {
+                final Path file = workDirectory.resolve("payload-" + i + ".bin");
+                Files.write(file, payloads[i]);
+                payloadFiles[i] = file.toString();
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de préparer les fichiers du banc d'essai dans : " +
+                    workDirectory, e);
+        }
+    }
+
+    /**
+     * Deletes the payload and signature files written in {@link Mode#FILE}.
+     */
+    private void cleanUp() {
+        if (mode != Mode.FILE) {
+            return;
+        }
+        for (final String file : payloadFiles) {
+            deleteQuietly(Path.of(file));
+        }
+        for (int worker = 0; worker < threads; worker++) {
+            deleteQuietly(workDirectory.resolve("worker-" + worker + ".sig"));
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the given threads.
+     *
+     * @param threadBean the thread management bean
+     * @param threadIds  the identifiers of the threads
+     * @return the number of bytes, or -1 if the JVM cannot measure it
+     */
+    private static long allocatedBytes(final ThreadMXBean threadBean, final long[] threadIds) {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean bean) || !bean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long sum = 0;
+        for (final long allocated : bean.getThreadAllocatedBytes(threadIds)) {
+            sum += Math.max(0, allocated);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of garbage collections so far, all collectors included.
+     *
+     * @return the number of collections
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the accumulated garbage collection time so far, all collectors included.
+     *
+     * @return the time in milliseconds
+     */
+    private static long gcTime() {
+        long time = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Formats an allocation rate.
+     *
+     * @param current  the bytes allocated at the end of the interval
+     * @param previous the bytes allocated at the start of the interval
+     * @param seconds  the length of the interval
+     * @return the formatted rate
+     */
+    private static String formatRate(final long current, final long previous, final double seconds) {
+        if (current < 0 || previous < 0) {
+            return "n/a";
+        }
+        return String.format("%.1f Mo/s", (current - previous) / seconds / (1024 * 1024));
+    }
+
+    /**
+     * Sleeps until the given instant.
+     *
+     * @param instant the {@link System#nanoTime()} instant
+     */
+    private static void sleepUntil(final long instant) {
+        final long remaining = instant - System.nanoTime();
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for a latch, restoring the interrupt flag if interrupted.
+     *
+     * @param latch the latch
+     */
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the workers to finish their last operation.
+     *
+     * @param pool the pool of workers
+     */
+    private static void awaitTermination(final ExecutorService pool) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes a file, ignoring any error.
+     *
+     * @param path the path to the file
+     */
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // leftover benchmark files are harmless
+        }
+    }
+}
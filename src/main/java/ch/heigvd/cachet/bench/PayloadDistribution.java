@@ -0,0 +1,123 @@
+package ch.heigvd.cachet.bench;
+
+import ch.heigvd.cachet.exceptions.MissingParameterException;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Weighted distribution of payload sizes, parsed from a specification such as {@code 1k:60,64k:30,1m:10}.
+ * <p>
+ * Each entry is a size in bytes, optionally suffixed by {@code k} or {@code m}, and an optional weight
+ * (1 by default).
+ */
+public final class PayloadDistribution {
+    private final int[] sizes;
+    private final long[] cumulativeWeights;
+
+    /**
+     * Creates a distribution.
+     *
+     * @param sizes   the payload sizes in bytes
+     * @param weights the weight of each size
+     */
+    private PayloadDistribution(final int[] sizes, final long[] weights) {
+        this.sizes = sizes;
+        this.cumulativeWeights = new long[weights.length];
+        long sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * Parses a distribution.
+     *
+     * @param specification the comma-separated list of {@code size[:weight]} entries
+     * @return the distribution
+     * @throws MissingParameterException if the specification is invalid
+     */
+    public static PayloadDistribution parse(final String specification) {
+        if (specification == null || specification.trim().isEmpty()) {
+            throw new MissingParameterException("La distribution des tailles ne peut pas être vide");
+        }
+        final String[] entries = specification.split(",");
+        final int[] sizes = new int[entries.length];
+        final long[] weights = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            final String[] parts = entries[i].trim().split(":");
+            if (parts.length > 2) {
+                throw new MissingParameterException("Entrée de distribution invalide : " + entries[i]);
+            }
+            sizes[i] = parseSize(parts[0]);
+            weights[i] = parts.length == 2 ? parsePositive(parts[1], entries[i]) : 1;
+        }
+        return new PayloadDistribution(sizes, weights);
+    }
+
+    /**
+     * Returns the distinct payload sizes, in the order of the specification.
+     *
+     * @return the sizes in bytes
+     */
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    /**
+     * Picks the index of a size according to the weights.
+     *
+     * @param random the source of randomness
+     * @return the index of the size in {@link #getSizes()}
+     */
+    public int pick(final Random random) {
+        final long draw = random.nextLong(cumulativeWeights[cumulativeWeights.length - 1]);
+        final int index = Arrays.binarySearch(cumulativeWeights, draw + 1);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Parses a size, with an optional {@code k} or {@code m} suffix.
+     *
+     * @param value the size
+     * @return the size in bytes
+     */
+    private static int parseSize(final String value) {
+        final String size = value.trim().toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        String digits = size;
+        if (size.endsWith("k")) {
+            multiplier = 1024;
+            digits = size.substring(0, size.length() - 1);
+        } else if (size.endsWith("m")) {
+            multiplier = 1024 * 1024;
+            digits = size.substring(0, size.length() - 1);
+        }
+        final long bytes = parsePositive(digits, value) * multiplier;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new MissingParameterException("Taille de contenu trop grande : " + value);
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Parses a strictly positive number.
+     *
+     * @param value the number
+     * @param entry the entry it belongs to, for error messages
+     * @return the number
+     */
+    private static long parsePositive(final String value, final String entry) {
+        try {
+            final long number = Long.parseLong(value.trim());
+            if (number <= 0) {
+                throw new MissingParameterException("Valeur strictement positive attendue : " + entry);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new MissingParameterException("Entrée de distribution invalide : " + entry, e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ch.heigvd.cachet.commands;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.batch.BatchSigner;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+import ch.heigvd.cachet.utils.KeyUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "batch", description = "Signe plusieurs fichiers, en signant une seule fois les contenus identiques")
+class Batch implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "Chemin vers la clé privée")
+    private String privateKeyPath;
+
+    @CommandLine.Parameters(index = "1..*", arity = "1..*",
+            description = "Fichiers ou répertoires à signer (chaque signature est écrite dans <fichier>.sig)")
+    private List<Path> paths;
+
+    @CommandLine.Option(names = { "--no-dedup" },
+            description = "Signe chaque fichier, même si son contenu est identique à celui d'un autre")
+    private boolean noDedup;
+
+    @CommandLine.Option(names = { "--durability" }, defaultValue = "FILE",
+            description = "Niveau de durabilité de l'écriture : NONE, FILE ou FULL (défaut : ${DEFAULT-VALUE})")
+    private Durability durability;
+
+    @CommandLine.Option(names = { "--log" },
+            description = "Répertoire du journal des signatures où inscrire chaque signature (requiert --public)")
+    private String logDirectory;
+
+    @CommandLine.Option(names = { "--public" },
+            description = "Clé publique dont l'empreinte est inscrite dans le journal (avec --log)")
+    private String publicKeyPath;
+
+    @Override
+    public Integer call() {
+        try {
+            FileIOUtils.validateParameters(privateKeyPath, "Erreur : Le chemin de la clé privée est requis");
+            if (logDirectory != null) {
+                FileIOUtils.validateParameters(publicKeyPath, "Erreur : --log requiert la clé publique (--public)");
+            }
+
+            System.out.println("Recherche des fichiers à signer...");
+            final List<Path> files = BatchSigner.collectFiles(paths);
+            System.out.printf("%d fichiers trouvés%n", files.size());
+
+            System.out.println("Chargement de la clé privée...");
+            final PrivateKey privateKey = KeyUtils.loadPrivateKey(privateKeyPath);
+            final PublicKey publicKey = publicKeyPath == null ? null : KeyUtils.loadPublicKey(publicKeyPath);
+            try (CachetService service = new CachetService(privateKey, publicKey);
+                 SignatureLog log = logDirectory == null ? null
+                         : SignatureLog.open(Paths.get(logDirectory), privateKey, publicKey, durability)) {
+                System.out.println("Clé privée chargée");
+
+                System.out.println("Signature en cours...");
+                final BatchSigner.Summary summary = new BatchSigner(service, !noDedup, durability, log).sign(files);
+
+                System.out.printf("%d fichiers signés avec %d opérations de signature%n",
+                        summary.files(), summary.signatures());
+                if (!noDedup) {
+                    System.out.printf("Déduplication : %d signatures et %d octets économisés%n",
+                            summary.signaturesSaved(), summary.bytesSaved());
+                }
+            }
+            System.out.println("Opération de signature terminée avec succès");
+            return 0;
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ch.heigvd.cachet.commands;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.bench.LatencyHistogram;
+import ch.heigvd.cachet.bench.LoadGenerator;
+import ch.heigvd.cachet.bench.PayloadDistribution;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.MissingParameterException;
+import ch.heigvd.cachet.scheme.SchemeRegistry;
+import ch.heigvd.cachet.scheme.SignatureScheme;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.KeyUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "bench", description = "Mesure le débit et la latence de la signature sous charge soutenue")
+class Bench implements Callable<Integer> {
+
+    @CommandLine.Option(names = { "--duration" }, defaultValue = "60",
+            description = "Durée de la mesure en secondes (défaut : ${DEFAULT-VALUE})")
+    private int durationSeconds;
+
+    @CommandLine.Option(names = { "--warmup" }, defaultValue = "10",
+            description = "Durée du préchauffage en secondes (défaut : ${DEFAULT-VALUE})")
+    private int warmupSeconds;
+
+    @CommandLine.Option(names = { "--interval" }, defaultValue = "5",
+            description = "Période d'affichage de la progression en secondes (défaut : ${DEFAULT-VALUE})")
+    private int intervalSeconds;
+
+    @CommandLine.Option(names = { "--threads" },
+            description = "Nombre de threads concurrents (défaut : nombre de processeurs)")
+    private Integer threads;
+
+    @CommandLine.Option(names = { "--sizes" }, defaultValue = "1k:60,64k:30,1m:10",
+            description = "Distribution des tailles de contenu taille[:poids],... (défaut : ${DEFAULT-VALUE})")
+    private String sizes;
+
+    @CommandLine.Option(names = { "--mode" }, defaultValue = "MEMORY",
+            description = "MEMORY (signature seule) ou FILE (lecture, signature et écriture) (défaut : ${DEFAULT-VALUE})")
+    private LoadGenerator.Mode mode;
+
+    @CommandLine.Option(names = { "--durability" }, defaultValue = "NONE",
+            description = "Durabilité de l'écriture des signatures en mode FILE (défaut : ${DEFAULT-VALUE})")
+    private Durability durability;
+
+    @CommandLine.Option(names = { "--dir" },
+            description = "Répertoire de travail en mode FILE (défaut : répertoire temporaire)")
+    private String workDirectory;
+
+    @CommandLine.Option(names = { "--private" },
+            description = "Clé privée à utiliser (défaut : clé générée pour le banc d'essai)")
+    private String privateKeyPath;
+
+    @CommandLine.Option(names = { "--scheme" }, defaultValue = "ED25519",
+            description = "Schéma de la clé générée : ED25519, ED448 ou ECDSA_P256 (défaut : ${DEFAULT-VALUE})")
+    private SignatureScheme scheme;
+
+    @CommandLine.Option(names = { "--compare-schemes" },
+            description = "Mesure successivement chaque schéma disponible et affiche un comparatif")
+    private boolean compareSchemes;
+
+    @Override
+    public Integer call() {
+        try {
+            if (durationSeconds <= 0 || warmupSeconds < 0 || intervalSeconds <= 0) {
+                throw new MissingParameterException("Erreur : Les durées doivent être positives");
+            }
+            if (compareSchemes && privateKeyPath != null) {
+                throw new MissingParameterException(
+                        "Erreur : --compare-schemes génère une clé par schéma et ne peut pas être combiné avec --private");
+            }
+
+            final PayloadDistribution distribution = PayloadDistribution.parse(sizes);
+            final Path directory = workDirectory == null
+                    ? Files.createTempDirectory("cachet-bench")
+                    : Paths.get(workDirectory);
+            try {
+                if (compareSchemes) {
+                    final Map<SignatureScheme, KeyPair> keyPairs = new EnumMap<>(SignatureScheme.class);
+                    final Map<SignatureScheme, LoadGenerator.Report> reports = new EnumMap<>(SignatureScheme.class);
+                    for (final SignatureScheme candidate : SchemeRegistry.available()) {
+                        System.out.printf("%n== %s ==%n", candidate.getDisplayName());
+                        keyPairs.put(candidate, KeyUtils.generateKeyPair(candidate));
+                        reports.put(candidate, run(keyPairs.get(candidate).getPrivate(), distribution, directory));
+                    }
+                    printComparison(keyPairs, reports);
+                } else {
+                    final PrivateKey privateKey = privateKeyPath == null
+                            ? KeyUtils.generateKeyPair(scheme).getPrivate()
+                            : KeyUtils.loadPrivateKey(privateKeyPath);
+                    printReport(run(privateKey, distribution, directory));
+                }
+            } finally {
+                if (workDirectory == null) {
+                    Files.deleteIfExists(directory);
+                }
+            }
+            return 0;
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
+
+    /**
+     * Runs the load generator with the options of the command.
+     *
+     * @param privateKey   the key used for signing
+     * @param distribution the payload sizes
+     * @param directory    the work directory in FILE mode
+     * @return the report of the measured phase
+     */
+    private LoadGenerator.Report run(final PrivateKey privateKey, final PayloadDistribution distribution,
+                                     final Path directory) {
+        final LoadGenerator generator = new LoadGenerator(privateKey, distribution, mode, durability,
+                threads == null ? Runtime.getRuntime().availableProcessors() : threads, directory);
+        return generator.run(Duration.ofSeconds(warmupSeconds), Duration.ofSeconds(durationSeconds),
+                Duration.ofSeconds(intervalSeconds), System.out);
+    }
+
+    /**
+     * Prints a comparison of the schemes, one line per scheme. Signature lengths are those of the signatures made
+     * during the run, as DER-encoded ECDSA signatures vary in length.
+     *
+     * @param keyPairs the key pair used for each scheme
+     * @param reports  the report of each scheme
+     */
+    private void printComparison(final Map<SignatureScheme, KeyPair> keyPairs,
+                                 final Map<SignatureScheme, LoadGenerator.Report> reports) {
+        System.out.println();
+        System.out.println("Comparatif des schémas");
+        System.out.println("======================");
+        System.out.printf("%-12s %12s %12s %12s %12s %10s %10s %10s%n",
+                "Schéma", "ops/s", "p50 (µs)", "p99 (µs)", "p999 (µs)", "Sig. moy.", "Sig. max", "Clé pub.");
+        for (final Map.Entry<SignatureScheme, LoadGenerator.Report> entry : reports.entrySet()) {
+            final KeyPair keyPair = keyPairs.get(entry.getKey());
+            final LatencyHistogram latencies = entry.getValue().latencies();
+            System.out.printf("%-12s %12.1f %12.1f %12.1f %12.1f %8.1f o %8d o %8d o%n",
+                    entry.getKey().getDisplayName(),
+                    entry.getValue().operationsPerSecond(),
+                    latencies.getPercentile(0.50) / 1e3,
+                    latencies.getPercentile(0.99) / 1e3,
+                    latencies.getPercentile(0.999) / 1e3,
+                    entry.getValue().averageSignatureLength(),
+                    entry.getValue().maxSignature(),
+                    keyPair.getPublic().getEncoded().length);
+        }
+    }
+
+    /**
+     * Prints the summary of a measured run.
+     *
+     * @param report the report to print
+     */
+    private void printReport(final LoadGenerator.Report report) {
+        final LatencyHistogram latencies = report.latencies();
+        final double seconds = report.elapsed().toNanos() / 1e9;
+
+        System.out.println();
+        System.out.println("Résultats");
+        System.out.println("=========");
+        System.out.printf("Opérations      : %d en %.1f s (%.1f ops/s)%n",
+                report.operations(), seconds, report.operationsPerSecond());
+        System.out.printf("Latence p50     : %.1f µs%n", latencies.getPercentile(0.50) / 1e3);
+        System.out.printf("Latence p99     : %.1f µs%n", latencies.getPercentile(0.99) / 1e3);
+        System.out.printf("Latence p999    : %.1f µs%n", latencies.getPercentile(0.999) / 1e3);
+        System.out.printf("Latence max     : %.1f µs%n", latencies.getMax() / 1e3);
+        if (report.allocatedBytes() >= 0 && report.operations() > 0) {
+            System.out.printf("Allocation      : %.1f Mo/s (%d octets/op)%n",
+                    report.allocatedBytes() / seconds / (1024 * 1024),
+                    report.allocatedBytes() / report.operations());
+        } else {
+            System.out.println("Allocation      : non mesurable sur cette JVM");
+        }
+        System.out.printf("GC              : %d collections, %d ms%n",
+                report.gcCount(), report.gcTime().toMillis());
+    }
+}
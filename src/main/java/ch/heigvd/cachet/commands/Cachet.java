@@ -6,11 +6,15 @@ import picocli.CommandLine;
     name = "cachet",
     subcommands = {
         Sign.class,
+        Batch.class,
         Keygen.class,
         Verify.class,
+        Bench.class,
+        Watch.class,
+        Log.class,
         CommandLine.HelpCommand.class
     },
-    description = "Outil CLI pour signer et vérifier des documents numériques avec Ed25519",
+    description = "Outil CLI pour signer et vérifier des documents numériques avec Ed25519, Ed448 ou ECDSA P-256",
     mixinStandardHelpOptions = true,
     version = "Cachet 1.0"
 )
@@ -23,7 +27,11 @@ public class Cachet implements Runnable {
                 Utilisez une des sous-commandes suivantes :
                   keygen  - Génère une nouvelle paire de clés
                   sign    - Signe un fichier
+                  batch   - Signe plusieurs fichiers
                   verify  - Vérifie la signature d'un fichier
+                  bench   - Mesure le débit et la latence de la signature
+                  watch   - Signe les fichiers déposés dans un répertoire
+                  log     - Interroge et vérifie le journal des signatures
                 """);
     }
 }
@@ -2,11 +2,14 @@ package ch.heigvd.cachet.commands;
 
 import ch.heigvd.cachet.Constants;
 import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.scheme.SignatureScheme;
 import ch.heigvd.cachet.utils.KeyUtils;
 import picocli.CommandLine;
 
+import java.util.concurrent.Callable;
+
 @CommandLine.Command(name = "keygen", description = "Génère une identité (clé privée) aléatoire pour la signature")
-class Keygen implements Runnable {
+class Keygen implements Callable<Integer> {
 
     @CommandLine.Option(names = { "--private" }, description = "Fichier de sortie pour la clé privée")
     private String outputFile;
@@ -14,16 +17,20 @@ class Keygen implements Runnable {
     @CommandLine.Option(names = { "--public" }, description = "Fichier de sortie pour la clé publique")
     private String publicKeyFile;
 
+    @CommandLine.Option(names = { "--scheme" }, defaultValue = "ED25519",
+            description = "Schéma de signature : ED25519, ED448 ou ECDSA_P256 (défaut : ${DEFAULT-VALUE})")
+    private SignatureScheme scheme;
+
     @Override
-    public void run() {
+    public Integer call() {
         if (outputFile == null || outputFile.trim().isEmpty()) {
             outputFile = "private_key.pem";
         }
 
-        System.out.println("Génération d'une nouvelle paire de clés...");
+        System.out.printf("Génération d'une nouvelle paire de clés %s...%n", scheme.getDisplayName());
 
         try {
-            java.security.KeyPair keyPair = KeyUtils.generateKeyPair();
+            java.security.KeyPair keyPair = KeyUtils.generateKeyPair(scheme);
 
             KeyUtils.writePrivateKey(outputFile, keyPair.getPrivate());
             System.out.println("Clé privée enregistrée dans : " + outputFile);
@@ -36,13 +43,14 @@ class Keygen implements Runnable {
             }
 
             System.out.println("Génération de clés terminée avec succès");
+            return 0;
         } catch (CachetException e) {
             System.err.println("Erreur : " + e.getMessage());
-            System.exit(Constants.ERROR_EXIT_CODE);
+            return Constants.ERROR_EXIT_CODE;
         } catch (Exception e) {
             System.err.println("Erreur inattendue : " + e.getMessage());
             e.printStackTrace();
-            System.exit(Constants.ERROR_EXIT_CODE);
+            return Constants.ERROR_EXIT_CODE;
         }
     }
 }
@@ -0,0 +1,25 @@
+package ch.heigvd.cachet.commands;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "log",
+    subcommands = {
+        LogQuery.class,
+        LogVerify.class,
+        CommandLine.HelpCommand.class
+    },
+    description = "Interroge et vérifie le journal des signatures"
+)
+class Log implements Runnable {
+    @Override
+    public void run() {
+        System.out.println("""
+                Journal des signatures
+                ======================
+                Utilisez une des sous-commandes suivantes :
+                  query   - Recherche les signatures d'un contenu ou d'une période
+                  verify  - Vérifie l'intégrité du journal et ses points de contrôle
+                """);
+    }
+}
@@ -0,0 +1,122 @@
+package ch.heigvd.cachet.commands;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.MissingParameterException;
+import ch.heigvd.cachet.log.LogEntry;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.utils.DigestUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "query", description = "Recherche dans le journal les signatures d'un contenu ou d'une période")
+class LogQuery implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "Répertoire du journal")
+    private Path logDirectory;
+
+    @CommandLine.Option(names = { "--file" }, description = "Fichier dont les signatures sont recherchées")
+    private Path file;
+
+    @CommandLine.Option(names = { "--digest" }, description = "Condensat SHA-256 (hexadécimal) du contenu recherché")
+    private String digest;
+
+    @CommandLine.Option(names = { "--from" },
+            description = "Début de la période, inclus (ISO-8601, p. ex. 2026-01-31 ou 2026-01-31T12:00:00Z)")
+    private String from;
+
+    @CommandLine.Option(names = { "--to" }, description = "Fin de la période, exclue (ISO-8601)")
+    private String to;
+
+    @CommandLine.Option(names = { "--limit" }, defaultValue = "100",
+            description = "Nombre maximal d'entrées affichées pour une période (défaut : ${DEFAULT-VALUE})")
+    private int limit;
+
+    @Override
+    public Integer call() {
+        try {
+            final int criteria = (file != null ? 1 : 0) + (digest != null ? 1 : 0)
+                    + (from != null || to != null ? 1 : 0);
+            if (criteria != 1) {
+                throw new MissingParameterException("Erreur : Indiquez soit --file, soit --digest, soit --from/--to");
+            }
+
+            try (SignatureLog log = SignatureLog.openReadOnly(logDirectory)) {
+                final List<LogEntry> entries;
+                if (from != null || to != null) {
+                    entries = log.findByTime(parseInstant(from, Instant.EPOCH),
+                            parseInstant(to, Instant.ofEpochMilli(Long.MAX_VALUE)), limit);
+                } else {
+                    entries = log.findByDigest(file != null ? DigestUtils.digest(file) : parseDigest(digest));
+                }
+
+                for (final LogEntry entry : entries) {
+                    System.out.printf("#%d  %s  contenu=%s  clé=%s  signature=%s%n",
+                            entry.index(),
+                            entry.timestamp(),
+                            HexFormat.of().formatHex(entry.digest()),
+                            HexFormat.of().formatHex(entry.keyFingerprint(), 0, 8),
+                            Base64.getEncoder().encodeToString(entry.signature()));
+                }
+                System.out.printf("%d entrées trouvées sur %d%n", entries.size(), log.size());
+                return entries.isEmpty() ? Constants.ERROR_EXIT_CODE : 0;
+            }
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
+
+    /**
+     * Parses a hexadecimal SHA-256 digest.
+     *
+     * @param value the digest
+     * @return the digest bytes
+     * @throws MissingParameterException if the value is not a SHA-256 digest
+     */
+    private static byte[] parseDigest(final String value) {
+        try {
+            final byte[] bytes = HexFormat.of().parseHex(value.trim());
+            if (bytes.length == 32) {
+                return bytes;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // reported below
+        }
+        throw new MissingParameterException("Erreur : Le condensat doit être un SHA-256 en hexadécimal");
+    }
+
+    /**
+     * Parses an instant or a date, a date standing for midnight UTC.
+     *
+     * @param value        the value, or null
+     * @param defaultValue the instant to use if the value is null
+     * @return the instant
+     * @throws MissingParameterException if the value cannot be parsed
+     */
+    private static Instant parseInstant(final String value, final Instant defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return value.contains("T")
+                    ? Instant.parse(value)
+                    : LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new MissingParameterException("Erreur : Date invalide : " + value, e);
+        }
+    }
+}
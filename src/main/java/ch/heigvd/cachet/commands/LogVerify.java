@@ -0,0 +1,63 @@
+package ch.heigvd.cachet.commands;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.log.Checkpoint;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.utils.KeyUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "verify", description = "Vérifie l'intégrité du journal et la signature de ses points de contrôle")
+class LogVerify implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "Répertoire du journal")
+    private Path logDirectory;
+
+    @CommandLine.Parameters(index = "1", description = "Clé publique ayant signé les points de contrôle")
+    private String publicKeyPath;
+
+    @Override
+    public Integer call() {
+        try {
+            System.out.println("Chargement de la clé publique...");
+            final PublicKey publicKey = KeyUtils.loadPublicKey(publicKeyPath);
+
+            try (SignatureLog log = SignatureLog.openReadOnly(logDirectory)) {
+                System.out.printf("Vérification de %d entrées...%n", log.size());
+                final SignatureLog.Audit audit = log.audit(publicKey);
+
+                System.out.println();
+                if (!audit.isValid()) {
+                    System.out.println("Le journal est altéré : " + audit.failure());
+                    return Constants.INVALID_SIGNATURE_EXIT_CODE;
+                }
+                System.out.printf("Le journal est intact : %d entrées, %d points de contrôle vérifiés%n",
+                        audit.entries(), audit.checkpoints());
+                final List<Checkpoint> checkpoints = log.getCheckpoints();
+                if (checkpoints.isEmpty()) {
+                    System.out.println("Aucun point de contrôle : les entrées ne sont pas encore attestées");
+                } else {
+                    final Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+                    System.out.printf("Dernier point de contrôle : %d entrées au %s%n", last.size(), last.timestamp());
+                    if (last.size() < audit.entries()) {
+                        System.out.printf("%d entrées postérieures ne sont pas encore attestées%n",
+                                audit.entries() - last.size());
+                    }
+                }
+                return 0;
+            }
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
+}
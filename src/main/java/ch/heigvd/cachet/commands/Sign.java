@@ -2,16 +2,24 @@ package ch.heigvd.cachet.commands;
 
 import ch.heigvd.cachet.Constants;
 import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.MissingParameterException;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.utils.DigestUtils;
+import ch.heigvd.cachet.utils.Durability;
 import ch.heigvd.cachet.utils.FileIOUtils;
-import ch.heigvd.cachet.utils.SignatureUtils;
 import ch.heigvd.cachet.utils.KeyUtils;
 import picocli.CommandLine;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.util.Base64;
+import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "sign", description = "Signe un fichier")
-class Sign implements Runnable {
+class Sign implements Callable<Integer> {
 
     @CommandLine.Parameters(index = "0", description = "Chemin vers le fichier d'entrée à signer")
     private String inputFilePath;
@@ -22,42 +30,113 @@ class Sign implements Runnable {
     @CommandLine.Parameters(index = "2", description = "Chemin vers la clé privée")
     private String privateKeyPath;
 
+    @CommandLine.Option(names = { "--attached" },
+            description = "Écrit une enveloppe contenant le fichier et sa signature au lieu d'une signature détachée")
+    private boolean attached;
+
+    @CommandLine.Option(names = { "--public" },
+            description = "Clé publique dont l'empreinte est inscrite dans l'enveloppe (avec --attached) "
+                    + "ou dans le journal (avec --log)")
+    private String publicKeyPath;
+
+    @CommandLine.Option(names = { "--log" },
+            description = "Répertoire du journal des signatures où inscrire la signature (requiert --public)")
+    private String logDirectory;
+
+    @CommandLine.Option(names = { "--durability" }, defaultValue = "FILE",
+            description = "Niveau de durabilité de l'écriture : NONE, FILE ou FULL (défaut : ${DEFAULT-VALUE})")
+    private Durability durability;
+
     @Override
-    public void run() {
+    public Integer call() {
         try {
             FileIOUtils.validateParameters(inputFilePath, "Erreur : Le chemin du fichier d'entrée est requis");
             FileIOUtils.validateParameters(outputSignaturePath, "Erreur : Le chemin du fichier de sortie est requis");
             FileIOUtils.validateParameters(privateKeyPath, "Erreur : Le chemin de la clé privée est requis");
 
-            System.out.printf("Signature de %s vers %s%n", inputFilePath, outputSignaturePath);
+            if (logDirectory != null) {
+                if (attached) {
+                    throw new MissingParameterException("Erreur : --log n'est disponible qu'avec une signature détachée");
+                }
+                FileIOUtils.validateParameters(publicKeyPath, "Erreur : --log requiert la clé publique (--public)");
+            }
 
-            System.out.println("Lecture du fichier...");
-            final byte[] dataToSign = FileIOUtils.fileToBytes(inputFilePath);
-            System.out.printf("Fichier lu (%d octets)%n", dataToSign.length);
+            System.out.printf("Signature de %s vers %s%n", inputFilePath, outputSignaturePath);
 
             System.out.println("Chargement de la clé privée...");
+            PublicKey publicKey = null;
+            if (publicKeyPath != null && !publicKeyPath.trim().isEmpty()) {
+                publicKey = KeyUtils.loadPublicKey(publicKeyPath);
+            }
             final PrivateKey privateKey = KeyUtils.loadPrivateKey(privateKeyPath);
-            System.out.println("Clé privée chargée");
-
-            System.out.println("Signature en cours...");
-            final byte[] signature = SignatureUtils.sign(dataToSign, privateKey);
-            System.out.println("Signature générée");
-
-            final byte[] encodedSignature = Base64.getEncoder().encode(signature);
+            try (CachetService service = new CachetService(privateKey, publicKey)) {
+                System.out.println("Clé privée chargée");
 
-            System.out.println("Signature (Base64) : " + new String(encodedSignature));
-
-            System.out.println("Écriture de la signature...");
-            FileIOUtils.writeToFile(encodedSignature, outputSignaturePath);
-            System.out.println("Signature écrite dans : " + outputSignaturePath);
+                if (attached) {
+                    signAttached(service);
+                } else {
+                    final CachetService.SignedContent signed = signDetached(service);
+                    if (logDirectory != null) {
+                        try (SignatureLog log = SignatureLog.open(Paths.get(logDirectory), privateKey, publicKey,
+                                durability)) {
+                            final long index = log.append(signed.digest(), service.getKeyFingerprint(),
+                                    signed.signature()).index();
+                            System.out.printf("Signature inscrite au journal (entrée %d)%n", index);
+                        }
+                    }
+                }
+            }
             System.out.println("Opération de signature terminée avec succès");
+            return 0;
         } catch (CachetException e) {
             System.err.println("Erreur : " + e.getMessage());
-            System.exit(Constants.ERROR_EXIT_CODE);
+            return Constants.ERROR_EXIT_CODE;
         } catch (Exception e) {
             System.err.println("Erreur inattendue : " + e.getMessage());
             e.printStackTrace();
-            System.exit(Constants.ERROR_EXIT_CODE);
+            return Constants.ERROR_EXIT_CODE;
         }
     }
+
+    /**
+     * Signs the input file into a detached, Base64-encoded signature file.
+     *
+     * @param service the service holding the private key
+     * @return the signature, and with {@code --log} the digest of the signed content
+     */
+    private CachetService.SignedContent signDetached(final CachetService service) {
+        System.out.println("Lecture du fichier...");
+        final byte[] dataToSign = FileIOUtils.fileToBytes(inputFilePath);
+        System.out.printf("Fichier lu (%d octets)%n", dataToSign.length);
+
+        System.out.println("Signature en cours...");
+        final byte[] signature = service.sign(ByteBuffer.wrap(dataToSign));
+        System.out.println("Signature générée");
+
+        final byte[] encodedSignature = Base64.getEncoder().encode(signature);
+
+        System.out.println("Signature (Base64) : " + new String(encodedSignature));
+
+        System.out.println("Écriture de la signature...");
+        FileIOUtils.writeToFile(encodedSignature, outputSignaturePath, durability);
+        System.out.println("Signature écrite dans : " + outputSignaturePath);
+        // the log identifies the content by the bytes actually signed, not by a second read of the file
+        return new CachetService.SignedContent(signature,
+                logDirectory == null ? null : DigestUtils.digest(ByteBuffer.wrap(dataToSign)));
+    }
+
+    /**
+     * Signs the input file into an envelope holding both the content and its signature.
+     *
+     * @param service the service holding the private key, and the public key if one was given
+     */
+    private void signAttached(final CachetService service) {
+        if (service.getKeyFingerprint() != null) {
+            System.out.println("Empreinte de la clé publique inscrite dans l'enveloppe");
+        }
+
+        System.out.println("Écriture de l'enveloppe signée...");
+        service.signAttached(Paths.get(inputFilePath), Paths.get(outputSignaturePath), durability);
+        System.out.println("Enveloppe écrite dans : " + outputSignaturePath);
+    }
 }
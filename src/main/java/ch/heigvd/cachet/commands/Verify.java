@@ -2,42 +2,84 @@ package ch.heigvd.cachet.commands;
 
 import ch.heigvd.cachet.Constants;
 import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.MissingParameterException;
 import ch.heigvd.cachet.exceptions.SignatureOperationException;
+import ch.heigvd.cachet.service.CachetService;
 import ch.heigvd.cachet.utils.FileIOUtils;
 import ch.heigvd.cachet.utils.KeyUtils;
-import ch.heigvd.cachet.utils.SignatureUtils;
 import picocli.CommandLine;
 
-import java.security.PublicKey;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "verify", description = "Vérifie la signature d'un fichier")
-class Verify implements Runnable {
+class Verify implements Callable<Integer> {
 
-    @CommandLine.Parameters(index = "0", description = "Chemin vers le fichier d'entrée à vérifier")
+    @CommandLine.Parameters(index = "0",
+            description = "Chemin vers le fichier d'entrée à vérifier (l'enveloppe avec --attached)")
     private String inputFile;
 
-    @CommandLine.Parameters(index = "1", description = "Chemin vers le fichier contenant la signature")
+    @CommandLine.Parameters(index = "1",
+            description = "Chemin vers le fichier contenant la signature (la clé publique avec --attached)")
     private String signatureFile;
 
-    @CommandLine.Parameters(index = "2", description = "Chemin vers la clé publique pour la vérification")
+    @CommandLine.Parameters(index = "2", arity = "0..1",
+            description = "Chemin vers la clé publique pour la vérification (omis avec --attached)")
     private String publicKeyPath;
 
+    @CommandLine.Option(names = { "--attached" },
+            description = "Vérifie une enveloppe contenant le fichier et sa signature")
+    private boolean attached;
+
+    @CommandLine.Option(names = { "--extract" },
+            description = "Fichier de sortie pour le contenu de l'enveloppe (avec --attached)")
+    private String extractPath;
+
     @Override
-    public void run() {
+    public Integer call() {
         try {
-            FileIOUtils.validateParameters(inputFile, "Erreur : Le chemin du fichier d'entrée est requis");
-            FileIOUtils.validateParameters(signatureFile, "Erreur : Le chemin du fichier de signature est requis");
-            FileIOUtils.validateParameters(publicKeyPath, "Erreur : Le chemin de la clé publique est requis");
+            final boolean valid = attached ? verifyAttached() : verifyDetached();
+
+            System.out.println();
+            if (valid) {
+                System.out.println("La signature est valide");
+                if (attached && extractPath != null) {
+                    System.out.println("Contenu extrait dans : " + extractPath);
+                }
+                return 0;
+            }
+            System.out.println("La signature est invalide");
+            return Constants.INVALID_SIGNATURE_EXIT_CODE;
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
 
-            System.out.printf("Vérification de %s avec signature %s et clé %s%n",
-                    inputFile, signatureFile, publicKeyPath);
+    /**
+     * Verifies the input file against a detached, Base64-encoded signature file.
+     *
+     * @return true if the signature is valid, false otherwise
+     */
+    private boolean verifyDetached() {
+        FileIOUtils.validateParameters(inputFile, "Erreur : Le chemin du fichier d'entrée est requis");
+        FileIOUtils.validateParameters(signatureFile, "Erreur : Le chemin du fichier de signature est requis");
+        FileIOUtils.validateParameters(publicKeyPath, "Erreur : Le chemin de la clé publique est requis");
 
-            System.out.println("Lecture du fichier...");
-            final byte[] dataToVerify = FileIOUtils.fileToBytes(inputFile);
-            System.out.printf("Fichier lu (%d octets)%n", dataToVerify.length);
+        System.out.printf("Vérification de %s avec signature %s et clé %s%n",
+                inputFile, signatureFile, publicKeyPath);
 
-            System.out.println("Chargement de la clé publique...");
-            final PublicKey publicKey = KeyUtils.loadPublicKey(publicKeyPath);
+        System.out.println("Lecture du fichier...");
+        final byte[] dataToVerify = FileIOUtils.fileToBytes(inputFile);
+        System.out.printf("Fichier lu (%d octets)%n", dataToVerify.length);
+
+        System.out.println("Chargement de la clé publique...");
+        try (CachetService service = new CachetService(null, KeyUtils.loadPublicKey(publicKeyPath))) {
             System.out.println("Clé publique chargée");
 
             System.out.println("Lecture de la signature...");
@@ -52,22 +94,31 @@ class Verify implements Runnable {
             }
 
             System.out.println("Vérification en cours...");
-            final boolean valid = SignatureUtils.verify(dataToVerify, signature, publicKey);
+            return service.verify(ByteBuffer.wrap(dataToVerify), signature);
+        }
+    }
 
-            System.out.println();
-            if (valid) {
-                System.out.println("La signature est valide");
-            } else {
-                System.out.println("La signature est invalide");
-                System.exit(Constants.INVALID_SIGNATURE_EXIT_CODE);
-            }
-        } catch (CachetException e) {
-            System.err.println("Erreur : " + e.getMessage());
-            System.exit(Constants.ERROR_EXIT_CODE);
-        } catch (Exception e) {
-            System.err.println("Erreur inattendue : " + e.getMessage());
-            e.printStackTrace();
-            System.exit(Constants.ERROR_EXIT_CODE);
+    /**
+     * Verifies an envelope, extracting its content while it is being verified if requested.
+     *
+     * @return true if the signature is valid, false otherwise
+     */
+    private boolean verifyAttached() {
+        FileIOUtils.validateParameters(inputFile, "Erreur : Le chemin de l'enveloppe est requis");
+        FileIOUtils.validateParameters(signatureFile, "Erreur : Le chemin de la clé publique est requis");
+        if (publicKeyPath != null) {
+            throw new MissingParameterException(
+                    "Erreur : Avec --attached, seuls l'enveloppe et la clé publique sont attendus");
+        }
+
+        System.out.printf("Vérification de l'enveloppe %s avec clé %s%n", inputFile, signatureFile);
+
+        System.out.println("Chargement de la clé publique...");
+        try (CachetService service = new CachetService(null, KeyUtils.loadPublicKey(signatureFile))) {
+            System.out.println("Clé publique chargée");
+
+            System.out.println("Vérification en cours...");
+            return service.verifyAttached(Paths.get(inputFile), extractPath == null ? null : Paths.get(extractPath));
         }
     }
 }
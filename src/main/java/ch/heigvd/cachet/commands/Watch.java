@@ -0,0 +1,120 @@
+package ch.heigvd.cachet.commands;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.batch.WatchSigner;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.MissingParameterException;
+import ch.heigvd.cachet.log.SignatureLog;
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+import ch.heigvd.cachet.utils.KeyUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CommandLine.Command(name = "watch", description = "Surveille un répertoire et signe chaque fichier une fois son écriture terminée")
+class Watch implements Callable<Integer> {
+
+    @CommandLine.Parameters(index = "0", description = "Chemin vers la clé privée")
+    private String privateKeyPath;
+
+    @CommandLine.Parameters(index = "1", description = "Répertoire à surveiller")
+    private Path directory;
+
+    @CommandLine.Option(names = { "--debounce" }, defaultValue = "1000",
+            description = "Délai sans modification, en millisecondes, avant de signer un fichier (défaut : ${DEFAULT-VALUE})")
+    private long debounceMillis;
+
+    @CommandLine.Option(names = { "--threads" },
+            description = "Nombre de threads de signature (défaut : nombre de processeurs)")
+    private Integer threads;
+
+    @CommandLine.Option(names = { "--durability" }, defaultValue = "FILE",
+            description = "Niveau de durabilité de l'écriture : NONE, FILE ou FULL (défaut : ${DEFAULT-VALUE})")
+    private Durability durability;
+
+    @CommandLine.Option(names = { "--state" },
+            description = "Fichier d'état des fichiers déjà signés (défaut : <répertoire>/.cachet-watch.state)")
+    private Path stateFile;
+
+    @CommandLine.Option(names = { "--log" },
+            description = "Répertoire du journal des signatures où inscrire chaque signature (requiert --public)")
+    private Path logDirectory;
+
+    @CommandLine.Option(names = { "--public" },
+            description = "Clé publique dont l'empreinte est inscrite dans le journal (avec --log)")
+    private String publicKeyPath;
+
+    @Override
+    public Integer call() {
+        try {
+            FileIOUtils.validateParameters(privateKeyPath, "Erreur : Le chemin de la clé privée est requis");
+            if (debounceMillis <= 0 || (threads != null && threads <= 0)) {
+                throw new MissingParameterException("Erreur : Le délai et le nombre de threads doivent être positifs");
+            }
+            if (logDirectory != null) {
+                FileIOUtils.validateParameters(publicKeyPath, "Erreur : --log requiert la clé publique (--public)");
+            }
+
+            System.out.println("Chargement de la clé privée...");
+            final PrivateKey privateKey = KeyUtils.loadPrivateKey(privateKeyPath);
+            final PublicKey publicKey = publicKeyPath == null ? null : KeyUtils.loadPublicKey(publicKeyPath);
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    threads == null ? Runtime.getRuntime().availableProcessors() : threads);
+            final CountDownLatch stopped = new CountDownLatch(1);
+            Thread shutdownHook = null;
+            try {
+                // closed in reverse order: the watcher drains its signatures, the log signs its last checkpoint,
+                // then the service and the executor are released
+                try (CachetService service = new CachetService(privateKey, publicKey, executor);
+                     SignatureLog log = logDirectory == null ? null
+                             : SignatureLog.open(logDirectory, privateKey, publicKey, durability);
+                     WatchSigner watcher = new WatchSigner(service, directory, Duration.ofMillis(debounceMillis),
+                             durability, stateFile == null ? directory.resolve(".cachet-watch.state") : stateFile,
+                             System.out, log)) {
+                    System.out.println("Clé privée chargée");
+
+                    // the hook only stops the watcher, and holds the JVM until this thread has torn everything down
+                    shutdownHook = new Thread(() -> {
+                        watcher.stop();
+                        try {
+                            stopped.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "cachet-watch-shutdown");
+                    Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+                    System.out.println("Surveillance de " + directory + " (Ctrl+C pour arrêter)");
+                    watcher.run();
+                }
+            } finally {
+                executor.shutdown();
+                stopped.countDown();
+                if (shutdownHook != null) {
+                    try {
+                        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                    } catch (IllegalStateException ignored) {
+                        // the JVM is already shutting down and the hook is waiting for this thread
+                    }
+                }
+            }
+            return 0;
+        } catch (CachetException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            return Constants.ERROR_EXIT_CODE;
+        } catch (Exception e) {
+            System.err.println("Erreur inattendue : " + e.getMessage());
+            e.printStackTrace();
+            return Constants.ERROR_EXIT_CODE;
+        }
+    }
+}
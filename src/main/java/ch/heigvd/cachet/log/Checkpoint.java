@@ -0,0 +1,54 @@
+package ch.heigvd.cachet.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A signed statement of the head of the signature log.
+ * <p>
+ * Every log entry is chained to the previous one by a SHA-256 hash, so the head hash at a given size commits to
+ * every entry before it. A valid checkpoint therefore proves that the first {@code size} entries were not altered,
+ * removed or reordered since it was signed.
+ *
+ * @param size           the number of entries covered
+ * @param timestamp      the time the checkpoint was made, with millisecond precision
+ * @param headHash       the chain hash of the last covered entry, all zeros for an empty log
+ * @param keyFingerprint the fingerprint of the public key matching the checkpoint key
+ * @param signature      the signature of {@link #signedBytes()}
+ */
+public record Checkpoint(long size, Instant timestamp, byte[] headHash, byte[] keyFingerprint, byte[] signature) {
+    /**
+     * Prefix of the signed bytes, so a checkpoint signature can never be mistaken for the signature of a document.
+     */
+    private static final byte[] CONTEXT = "CACHET-LOG-CHECKPOINT-1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Returns the bytes covered by the signature.
+     *
+     * @return the signed bytes
+     */
+    byte[] signedBytes() {
+        return signedBytes(size, timestamp, headHash, keyFingerprint);
+    }
+
+    /**
+     * Returns the bytes covered by the signature of a checkpoint.
+     *
+     * @param size           the number of entries covered
+     * @param timestamp      the time of the checkpoint
+     * @param headHash       the chain hash of the last covered entry
+     * @param keyFingerprint the fingerprint of the checkpoint key
+     * @return the signed bytes
+     */
+    static byte[] signedBytes(final long size, final Instant timestamp, final byte[] headHash,
+                              final byte[] keyFingerprint) {
+        return ByteBuffer.allocate(CONTEXT.length + 2 * Long.BYTES + headHash.length + keyFingerprint.length)
+                .put(CONTEXT)
+                .putLong(size)
+                .putLong(timestamp.toEpochMilli())
+                .put(headHash)
+                .put(keyFingerprint)
+                .array();
+    }
+}
@@ -0,0 +1,14 @@
+package ch.heigvd.cachet.log;
+
+import java.time.Instant;
+
+/**
+ * An entry of the signature log: a signature made at a given time over a content identified by its digest.
+ *
+ * @param index          the position of the entry in the log, starting at 0
+ * @param timestamp      the time the entry was appended, with millisecond precision
+ * @param digest         the SHA-256 digest of the signed content
+ * @param keyFingerprint the fingerprint of the public key matching the signing key
+ * @param signature      the signature of the content
+ */
+public record LogEntry(long index, Instant timestamp, byte[] digest, byte[] keyFingerprint, byte[] signature) {}
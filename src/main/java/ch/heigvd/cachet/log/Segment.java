@@ -0,0 +1,782 @@
+package ch.heigvd.cachet.log;
+
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.FileIOUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A segment of the signature log: a file of consecutive entries and its two indexes.
+ * <p>
+ * The segment file starts with a header, followed by the records:
+ * <pre>
+ * magic "CLOG" | version (1 byte) | index of the first entry (8 bytes)
+ * body length (4 bytes) | CRC32C of the body (4 bytes) | body
+ * ...
+ * </pre>
+ * where a body is {@code timestamp (8 bytes) | digest (32 bytes) | key fingerprint (32 bytes) | signature length
+ * (2 bytes) | signature}. The checksum detects a record torn by a crash, which is then cut off.
+ * <p>
+ * The time index ({@code .idx}) holds one fixed-size entry per record, in log order:
+ * {@code timestamp (8 bytes) | offset (8 bytes) | chain hash (32 bytes) | digest (32 bytes)}. Timestamps never
+ * decrease, so it is sorted by time. The digest index ({@code .dig}) holds {@code digest (32 bytes) | position
+ * (4 bytes)} entries sorted by digest. Both are binary searched.
+ * <p>
+ * While a segment is being written, its time index is kept in memory and appended to disk at every checkpoint, so
+ * opening the log only rebuilds the entries appended since the last checkpoint from the records; digest lookups
+ * scan the in-memory time index. When the segment is full, the rest of its time index and its digest index are
+ * written, and the segment never changes again. A sealed segment is opened lazily: its records and indexes are
+ * mapped read-only on first access and no file stays open for it.
+ */
+final class Segment {
+    static final int HASH_LENGTH = 32;
+
+    private static final byte[] MAGIC = {'C', 'L', 'O', 'G'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + Long.BYTES;
+    private static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int MIN_BODY_LENGTH = Long.BYTES + 2 * HASH_LENGTH + Short.BYTES;
+    private static final int MAX_BODY_LENGTH = MIN_BODY_LENGTH + 0xFFFF;
+    static final int TIME_ENTRY_LENGTH = 2 * Long.BYTES + 2 * HASH_LENGTH;
+    private static final int DIGEST_ENTRY_LENGTH = HASH_LENGTH + Integer.BYTES;
+    private static final int DIGEST_OFFSET = 2 * Long.BYTES + HASH_LENGTH;
+
+    private final Path file;
+    private final long baseIndex;
+    private FileChannel channel;
+    private ByteBuffer records;
+    private ByteBuffer timeIndex;
+    private ByteBuffer digestIndex;
+    private boolean sealed;
+    private int count;
+    private int indexed;
+    private long size;
+
+    private Segment(final Path file, final long baseIndex, final FileChannel channel) {
+        this.file = file;
+        this.baseIndex = baseIndex;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty segment, ready for appending.
+     *
+     * @param file       the segment file, which must not exist
+     * @param baseIndex  the index of the first entry of the segment
+     * @param durability the durability of the creation
+     * @return the segment
+     * @throws FileOperationException if the file cannot be created
+     */
+    static Segment create(final Path file, final long baseIndex, final Durability durability) {
+        try {
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final Segment segment = new Segment(file, baseIndex, channel);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).put(VERSION).putLong(baseIndex);
+            writeFully(channel, header.flip(), 0);
+            if (durability != Durability.NONE) {
+                channel.force(true);
+            }
+            if (durability == Durability.FULL) {
+                FileIOUtils.syncDirectory(file.toAbsolutePath().getParent());
+            }
+            segment.timeIndex = ByteBuffer.allocate(1024 * TIME_ENTRY_LENGTH);
+            segment.size = HEADER_LENGTH;
+            return segment;
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de créer le segment du journal : " + file, e);
+        }
+    }
+
+    /**
+     * Opens a sealed segment without reading it: its records and indexes are mapped on first access.
+     *
+     * @param file      the segment file
+     * @param baseIndex the index of the first entry of the segment, given by its name
+     * @return the segment
+     * @throws FileOperationException if the size of its time index is inconsistent
+     */
+    static Segment openSealed(final Path file, final long baseIndex) {
+        final Path timeFile = indexFile(file, ".idx");
+        try {
+            final long timeSize = Files.size(timeFile);
+            if (timeSize % TIME_ENTRY_LENGTH != 0 || timeSize / TIME_ENTRY_LENGTH > Integer.MAX_VALUE) {
+                throw new FileOperationException("Les index du segment sont incohérents : " + file);
+            }
+            final Segment segment = new Segment(file, baseIndex, null);
+            segment.sealed = true;
+            segment.count = (int) (timeSize / TIME_ENTRY_LENGTH);
+            segment.indexed = segment.count;
+            segment.size = Files.size(file);
+            return segment;
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de lire les index du segment : " + file, e);
+        }
+    }
+
+    /**
+     * Opens a segment that was not sealed. The entries covered by its time index on disk are loaded from it, the
+     * following ones are rebuilt from the records; if the index does not match the records, every entry is rebuilt.
+     * A record torn by a crash ends the segment; in writable mode it is cut off. A segment opened read-only is then
+     * mapped and its file closed.
+     *
+     * @param file         the segment file
+     * @param writable     true to open the segment for appending
+     * @param previousHash the chain hash of the entry preceding the segment
+     * @param sha256       the digest used to compute the chain hashes
+     * @return the segment
+     * @throws FileOperationException if the segment cannot be read
+     */
+    static Segment openUnsealed(final Path file, final boolean writable, final byte[] previousHash,
+                                final MessageDigest sha256) {
+        final Segment segment = openFile(file, writable);
+        segment.timeIndex = ByteBuffer.allocate(1024 * TIME_ENTRY_LENGTH);
+        try {
+            final long fileSize = segment.channel.size();
+            long offset = HEADER_LENGTH;
+            byte[] hash = previousHash;
+            final Path timeFile = indexFile(file, ".idx");
+            if (Files.exists(timeFile)) {
+                final byte[] entries = Files.readAllBytes(timeFile);
+                final long end = segment.endOfIndexed(entries, entries.length / TIME_ENTRY_LENGTH);
+                if (end > 0) {
+                    segment.indexed = entries.length / TIME_ENTRY_LENGTH;
+                    segment.count = segment.indexed;
+                    segment.timeIndex = ByteBuffer.wrap(Arrays.copyOf(entries,
+                            Math.max(segment.indexed * TIME_ENTRY_LENGTH, segment.timeIndex.capacity())));
+                    offset = end;
+                    hash = segment.chainHash(segment.count - 1);
+                }
+            }
+            while (offset + RECORD_HEADER_LENGTH <= fileSize) {
+                final ByteBuffer header = segment.readFully(offset, RECORD_HEADER_LENGTH);
+                final int length = header.getInt();
+                final int checksum = header.getInt();
+                if (length < MIN_BODY_LENGTH || length > MAX_BODY_LENGTH
+                        || offset + RECORD_HEADER_LENGTH + length > fileSize) {
+                    break;
+                }
+                final byte[] body = segment.readFully(offset + RECORD_HEADER_LENGTH, length).array();
+                if (checksum(body) != checksum) {
+                    break;
+                }
+                hash = chain(sha256, hash, body);
+                segment.index(body, offset, hash);
+                offset += RECORD_HEADER_LENGTH + length;
+            }
+            if (writable && offset < fileSize) {
+                segment.channel.truncate(offset);
+            }
+            segment.size = offset;
+            if (!writable) {
+                segment.records = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+                segment.close();
+            }
+            return segment;
+        } catch (IOException e) {
+            segment.close();
+            throw new FileOperationException("Impossible de lire le segment du journal : " + file, e);
+        }
+    }
+
+    /**
+     * Returns the index of the first entry of the segment.
+     *
+     * @return the index
+     */
+    long baseIndex() {
+        return baseIndex;
+    }
+
+    /**
+     * Returns the number of entries in the segment.
+     *
+     * @return the number of entries
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Returns the size of the segment file, up to the last complete record.
+     *
+     * @return the size in bytes
+     */
+    long byteSize() {
+        return size;
+    }
+
+    /**
+     * Tells whether the segment is sealed, i.e. its indexes are on disk and it no longer changes.
+     *
+     * @return true if the segment is sealed
+     */
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Returns the number of entries whose time index entry is on disk.
+     *
+     * @return the number of entries
+     */
+    int indexedCount() {
+        return indexed;
+    }
+
+    /**
+     * Returns the timestamp of an entry.
+     *
+     * @param position the position of the entry in the segment
+     * @return the timestamp in milliseconds
+     * @throws FileOperationException if the segment cannot be mapped
+     */
+    long timestamp(final int position) {
+        return timeIndex().getLong(position * TIME_ENTRY_LENGTH);
+    }
+
+    /**
+     * Returns the chain hash of an entry.
+     *
+     * @param position the position of the entry in the segment
+     * @return the hash
+     * @throws FileOperationException if the segment cannot be mapped
+     */
+    byte[] chainHash(final int position) {
+        final byte[] hash = new byte[HASH_LENGTH];
+        timeIndex().get(position * TIME_ENTRY_LENGTH + 2 * Long.BYTES, hash);
+        return hash;
+    }
+
+    /**
+     * Returns the content digest of an entry, as recorded in the time index.
+     *
+     * @param position the position of the entry in the segment
+     * @return the digest
+     * @throws FileOperationException if the segment cannot be mapped
+     */
+    byte[] digest(final int position) {
+        final byte[] digest = new byte[HASH_LENGTH];
+        timeIndex().get(position * TIME_ENTRY_LENGTH + DIGEST_OFFSET, digest);
+        return digest;
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param position the position of the entry in the segment
+     * @return the entry
+     * @throws FileOperationException if the entry cannot be read or is corrupted
+     */
+    LogEntry read(final int position) {
+        return decode(baseIndex + position, readBody(offset(position)));
+    }
+
+    /**
+     * Returns the position of the first entry whose timestamp is at least the given one.
+     *
+     * @param timestamp the timestamp in milliseconds
+     * @return the position, or {@link #count()} if every entry is older
+     */
+    int firstAtOrAfter(final long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the positions of the entries having a digest, in log order.
+     *
+     * @param digest the content digest
+     * @return the positions, empty if none
+     */
+    List<Integer> positionsOf(final byte[] digest) {
+        final List<Integer> positions = new ArrayList<>();
+        if (!sealed) {
+            // bounded by the segment size, and only the active segment is not sealed
+            final byte[] entries = timeIndex.array();
+            for (int position = 0; position < count; position++) {
+                final int at = position * TIME_ENTRY_LENGTH + DIGEST_OFFSET;
+                if (Arrays.equals(entries, at, at + HASH_LENGTH, digest, 0, HASH_LENGTH)) {
+                    positions.add(position);
+                }
+            }
+            return positions;
+        }
+        final ByteBuffer digestIndex = digestIndex();
+        final byte[] candidate = new byte[HASH_LENGTH];
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            digestIndex.get(middle * DIGEST_ENTRY_LENGTH, candidate);
+            if (Arrays.compareUnsigned(candidate, digest) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < count; i++) {
+            digestIndex.get(i * DIGEST_ENTRY_LENGTH, candidate);
+            if (!Arrays.equals(candidate, digest)) {
+                break;
+            }
+            positions.add(digestIndex.getInt(i * DIGEST_ENTRY_LENGTH + HASH_LENGTH));
+        }
+        return positions;
+    }
+
+    /**
+     * Appends a record to the segment.
+     *
+     * @param body      the encoded body of the record
+     * @param chainHash the chain hash of the record
+     * @throws FileOperationException if the record cannot be written
+     */
+    void append(final byte[] body, final byte[] chainHash) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + body.length)
+                .putInt(body.length)
+                .putInt(checksum(body))
+                .put(body)
+                .flip();
+        try {
+            writeFully(channel, record, size);
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible d'écrire dans le journal : " + file, e);
+        }
+        index(body, size, chainHash);
+        size += RECORD_HEADER_LENGTH + body.length;
+    }
+
+    /**
+     * Flushes the records to disk.
+     *
+     * @throws FileOperationException if the segment cannot be flushed
+     */
+    void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de synchroniser le journal : " + file, e);
+        }
+    }
+
+    /**
+     * Appends to the time index file the entries not written yet. The records must have been flushed first with
+     * the same durability, so the index on disk never points past them.
+     *
+     * @param durability the durability of the index file
+     * @throws FileOperationException if the index cannot be written
+     */
+    void writeIndex(final Durability durability) {
+        if (indexed == count) {
+            return;
+        }
+        final Path timeFile = indexFile(file, ".idx");
+        final ByteBuffer entries = ByteBuffer.wrap(timeIndex.array(), indexed * TIME_ENTRY_LENGTH,
+                (count - indexed) * TIME_ENTRY_LENGTH);
+        try (FileChannel index = FileChannel.open(timeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            writeFully(index, entries.slice(), (long) indexed * TIME_ENTRY_LENGTH);
+            // drops a torn entry, or entries left by a previous writer that did not match the records
+            index.truncate((long) count * TIME_ENTRY_LENGTH);
+            if (durability != Durability.NONE) {
+                index.force(true);
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible d'écrire l'index du segment : " + file, e);
+        }
+        if (durability == Durability.FULL && indexed == 0) {
+            FileIOUtils.syncDirectory(file.toAbsolutePath().getParent());
+        }
+        indexed = count;
+    }
+
+    /**
+     * Writes the rest of the time index and the digest index of the segment to disk, then closes the segment file.
+     * The digest index is written last, so its presence marks a completely sealed segment.
+     *
+     * @param durability the durability of the index files
+     * @throws FileOperationException if an index cannot be written
+     */
+    void seal(final Durability durability) {
+        writeIndex(durability);
+        final byte[] entries = timeIndex.array();
+        final List<Integer> sorted = new ArrayList<>(count);
+        for (int position = 0; position < count; position++) {
+            sorted.add(position);
+        }
+        // stable, so the positions of a digest stay in log order
+        sorted.sort((a, b) -> Arrays.compareUnsigned(
+                entries, a * TIME_ENTRY_LENGTH + DIGEST_OFFSET, a * TIME_ENTRY_LENGTH + DIGEST_OFFSET + HASH_LENGTH,
+                entries, b * TIME_ENTRY_LENGTH + DIGEST_OFFSET, b * TIME_ENTRY_LENGTH + DIGEST_OFFSET + HASH_LENGTH));
+        final ByteBuffer digestEntries = ByteBuffer.allocate(count * DIGEST_ENTRY_LENGTH);
+        for (final int position : sorted) {
+            digestEntries.put(entries, position * TIME_ENTRY_LENGTH + DIGEST_OFFSET, HASH_LENGTH).putInt(position);
+        }
+        FileIOUtils.writeToFile(digestEntries.array(), indexFile(file, ".dig").toString(), durability);
+        close();
+        sealed = true;
+        timeIndex = null;
+    }
+
+    /**
+     * Closes the segment file, if open. The mapped records and indexes are released by the garbage collector.
+     */
+    void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing was pending on this channel
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns the path of an index file of a segment.
+     *
+     * @param file      the segment file
+     * @param extension the extension of the index, {@code .idx} or {@code .dig}
+     * @return the path of the index
+     */
+    static Path indexFile(final Path file, final String extension) {
+        final String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + extension);
+    }
+
+    /**
+     * Encodes the body of a record.
+     *
+     * @param timestamp      the timestamp in milliseconds
+     * @param digest         the content digest
+     * @param keyFingerprint the key fingerprint
+     * @param signature      the signature
+     * @return the body
+     */
+    static byte[] encode(final long timestamp, final byte[] digest, final byte[] keyFingerprint,
+                         final byte[] signature) {
+        return ByteBuffer.allocate(MIN_BODY_LENGTH + signature.length)
+                .putLong(timestamp)
+                .put(digest)
+                .put(keyFingerprint)
+                .putShort((short) signature.length)
+                .put(signature)
+                .array();
+    }
+
+    /**
+     * Computes the chain hash of a record: {@code SHA-256(previous chain hash | body)}.
+     *
+     * @param sha256   the digest to use
+     * @param previous the chain hash of the previous record
+     * @param body     the body of the record
+     * @return the chain hash
+     */
+    static byte[] chain(final MessageDigest sha256, final byte[] previous, final byte[] body) {
+        sha256.update(previous);
+        return sha256.digest(body);
+    }
+
+    /**
+     * Reads the body of the record at an offset, checking its checksum.
+     *
+     * @param offset the offset of the record
+     * @return the body
+     * @throws FileOperationException if the record cannot be read or is corrupted
+     */
+    byte[] readBody(final long offset) {
+        map();
+        try {
+            final ByteBuffer header = readFully(offset, RECORD_HEADER_LENGTH);
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if (length < MIN_BODY_LENGTH || length > MAX_BODY_LENGTH) {
+                throw new FileOperationException("Enregistrement corrompu dans " + file + " à l'offset " + offset);
+            }
+            final byte[] body = readFully(offset + RECORD_HEADER_LENGTH, length).array();
+            if (checksum(body) != checksum) {
+                throw new FileOperationException("Enregistrement corrompu dans " + file + " à l'offset " + offset);
+            }
+            return body;
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de lire le journal : " + file, e);
+        }
+    }
+
+    /**
+     * Returns the offset of an entry in the segment file.
+     *
+     * @param position the position of the entry in the segment
+     * @return the offset
+     */
+    long offset(final int position) {
+        return timeIndex().getLong(position * TIME_ENTRY_LENGTH + Long.BYTES);
+    }
+
+    /**
+     * Returns the digest stored at a position of the digest index of a sealed segment.
+     *
+     * @param rank the rank of the digest index entry
+     * @return the digest and the position it points to
+     */
+    Map.Entry<byte[], Integer> digestEntry(final int rank) {
+        final ByteBuffer digestIndex = digestIndex();
+        final byte[] digest = new byte[HASH_LENGTH];
+        digestIndex.get(rank * DIGEST_ENTRY_LENGTH, digest);
+        return Map.entry(digest, digestIndex.getInt(rank * DIGEST_ENTRY_LENGTH + HASH_LENGTH));
+    }
+
+    /**
+     * Decodes the body of a record.
+     *
+     * @param index the index of the entry in the log
+     * @param body  the body
+     * @return the entry
+     */
+    static LogEntry decode(final long index, final byte[] body) {
+        final ByteBuffer buffer = ByteBuffer.wrap(body);
+        final Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+        final byte[] digest = new byte[HASH_LENGTH];
+        final byte[] keyFingerprint = new byte[HASH_LENGTH];
+        buffer.get(digest).get(keyFingerprint);
+        final byte[] signature = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(signature);
+        return new LogEntry(index, timestamp, digest, keyFingerprint, signature);
+    }
+
+    /**
+     * Adds a record to the in-memory indexes.
+     *
+     * @param body      the body of the record
+     * @param offset    the offset of the record
+     * @param chainHash the chain hash of the record
+     */
+    private void index(final byte[] body, final long offset, final byte[] chainHash) {
+        final int at = count * TIME_ENTRY_LENGTH;
+        if (at + TIME_ENTRY_LENGTH > timeIndex.capacity()) {
+            timeIndex = ByteBuffer.wrap(Arrays.copyOf(timeIndex.array(), timeIndex.capacity() * 2));
+        }
+        timeIndex.putLong(at, ByteBuffer.wrap(body).getLong(0))
+                .putLong(at + Long.BYTES, offset)
+                .put(at + 2 * Long.BYTES, chainHash)
+                .put(at + DIGEST_OFFSET, body, Long.BYTES, HASH_LENGTH);
+        count++;
+    }
+
+    /**
+     * Checks that the first entries of a time index read from disk match the records, by reading the record of the
+     * last one.
+     *
+     * @param entries the time index entries
+     * @param indexed the number of complete entries
+     * @return the offset following the record of the last entry, or -1 if the entries cannot be trusted
+     */
+    private long endOfIndexed(final byte[] entries, final int indexed) {
+        if (indexed == 0) {
+            return -1;
+        }
+        final ByteBuffer last = ByteBuffer.wrap(entries, (indexed - 1) * TIME_ENTRY_LENGTH, TIME_ENTRY_LENGTH).slice();
+        final long offset = last.getLong(Long.BYTES);
+        try {
+            final byte[] body = readBody(offset);
+            if (ByteBuffer.wrap(body).getLong(0) != last.getLong(0)
+                    || !Arrays.equals(body, Long.BYTES, Long.BYTES + HASH_LENGTH,
+                    entries, (indexed - 1) * TIME_ENTRY_LENGTH + DIGEST_OFFSET,
+                    indexed * TIME_ENTRY_LENGTH)) {
+                return -1;
+            }
+            return offset + RECORD_HEADER_LENGTH + body.length;
+        } catch (FileOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Maps the records and indexes of a sealed segment on first access, checking them, then closes its file.
+     *
+     * @throws FileOperationException if the segment or its indexes cannot be read or are inconsistent
+     */
+    private void map() {
+        if (!sealed || records != null) {
+            return;
+        }
+        try (FileChannel recordChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (readHeader(recordChannel, file) != baseIndex) {
+                throw new FileOperationException("Segment inattendu dans le journal : " + file);
+            }
+            final ByteBuffer mappedTimes = mapIndex(indexFile(file, ".idx"));
+            final ByteBuffer mappedDigests = mapIndex(indexFile(file, ".dig"));
+            if (mappedTimes.capacity() != count * TIME_ENTRY_LENGTH
+                    || mappedDigests.capacity() != count * DIGEST_ENTRY_LENGTH) {
+                throw new FileOperationException("Les index du segment sont incohérents : " + file);
+            }
+            records = recordChannel.map(FileChannel.MapMode.READ_ONLY, 0, recordChannel.size());
+            timeIndex = mappedTimes;
+            digestIndex = mappedDigests;
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible de lire les index du segment : " + file, e);
+        }
+    }
+
+    /**
+     * Returns the time index, mapping it if needed.
+     *
+     * @return the time index
+     */
+    private ByteBuffer timeIndex() {
+        map();
+        return timeIndex;
+    }
+
+    /**
+     * Returns the digest index of a sealed segment, mapping it if needed.
+     *
+     * @return the digest index
+     */
+    private ByteBuffer digestIndex() {
+        map();
+        return digestIndex;
+    }
+
+    /**
+     * Opens a segment file and checks its header.
+     *
+     * @param file     the segment file
+     * @param writable true to open it for writing
+     * @return the segment, without indexes
+     * @throws FileOperationException if the file cannot be opened or is not a segment
+     */
+    private static Segment openFile(final Path file, final boolean writable) {
+        FileChannel channel = null;
+        try {
+            channel = writable
+                    ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ);
+            return new Segment(file, readHeader(channel, file), channel);
+        } catch (IOException | FileOperationException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the open failure is reported instead
+                }
+            }
+            throw e instanceof FileOperationException fileException ? fileException
+                    : new FileOperationException("Impossible d'ouvrir le segment du journal : " + file, e);
+        }
+    }
+
+    /**
+     * Reads and checks the header of a segment file.
+     *
+     * @param channel the segment file
+     * @param file    its path
+     * @return the index of the first entry of the segment
+     * @throws IOException            if the file cannot be read
+     * @throws FileOperationException if the file is not a segment
+     */
+    private static long readHeader(final FileChannel channel, final Path file) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the whole header
+        }
+        header.flip();
+        final byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < HEADER_LENGTH) {
+            throw new FileOperationException("Le fichier n'est pas un segment de journal valide : " + file);
+        }
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.get() != VERSION) {
+            throw new FileOperationException("Le fichier n'est pas un segment de journal valide : " + file);
+        }
+        return header.getLong();
+    }
+
+    /**
+     * Reads bytes at an offset of the segment, from its file while it is open, from its mapping otherwise.
+     *
+     * @param offset the offset
+     * @param length the number of bytes
+     * @return a buffer positioned at 0 holding the bytes
+     * @throws IOException if the segment ends before
+     */
+    private ByteBuffer readFully(final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        if (channel == null) {
+            if (offset < 0 || offset + length > records.capacity()) {
+                throw new IOException("Fin de fichier inattendue");
+            }
+            return buffer.put(0, records, (int) offset, length);
+        }
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Fin de fichier inattendue");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a buffer at an offset of a file.
+     *
+     * @param channel the file
+     * @param buffer  the bytes to write
+     * @param offset  the offset
+     * @throws IOException if the write fails
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long offset)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Maps an index file read-only.
+     *
+     * @param file the index file
+     * @return the mapped content
+     * @throws IOException if the file cannot be mapped
+     */
+    private static ByteBuffer mapIndex(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Computes the CRC32C of a record body.
+     *
+     * @param body the body
+     * @return the checksum
+     */
+    private static int checksum(final byte[] body) {
+        final CRC32C crc = new CRC32C();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
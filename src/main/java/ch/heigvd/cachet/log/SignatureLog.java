@@ -0,0 +1,738 @@
+package ch.heigvd.cachet.log;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.CachetException;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.exceptions.SignatureOperationException;
+import ch.heigvd.cachet.utils.DigestUtils;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.KeyUtils;
+import ch.heigvd.cachet.utils.SignatureUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only local log of the signatures made, recording when each content was signed and by which key.
+ * <p>
+ * The log is a directory of {@link Segment segments} named after the index of their first entry. Entries are
+ * appended to the last segment, whose time index is written at every checkpoint; once it exceeds the segment size,
+ * its digest index is written and a new segment is started. Lookups by digest and by time range binary search the
+ * sorted indexes of each segment, so they read a logarithmic number of index entries instead of scanning the log.
+ * Only the entries appended since the last checkpoint, at most {@link Constants#LOG_CHECKPOINT_INTERVAL}, have no
+ * index on disk and are read when the log is opened. Sealed segments are only mapped when a lookup reaches them,
+ * so opening the log reads a bounded amount of data and keeps no file open for them.
+ * <p>
+ * Each entry is chained to the previous one by a SHA-256 hash. Every {@link Constants#LOG_CHECKPOINT_INTERVAL}
+ * entries, and when the log is closed, the head of the chain is signed into a {@link Checkpoint} appended to the
+ * {@code checkpoints} file. {@link #audit(PublicKey)} recomputes the chain and checks every checkpoint, so an entry
+ * altered, removed or reordered before the last checkpoint is detected.
+ * <p>
+ * With a durability other than {@link Durability#NONE}, the segment is flushed to disk before each checkpoint is
+ * written, so a checkpoint never covers entries that could be lost; entries appended since the last checkpoint
+ * may be lost on a crash. A single process may write the log at a time; readers see the log as it was when opened.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class SignatureLog implements AutoCloseable {
+    /**
+     * Outcome of an audit.
+     *
+     * @param entries     the number of entries checked
+     * @param checkpoints the number of checkpoints whose signature was verified
+     * @param failure     the first inconsistency found, or null if the log is intact
+     */
+    public record Audit(long entries, int checkpoints, String failure) {
+        /**
+         * Tells whether the log is intact.
+         *
+         * @return true if no inconsistency was found
+         */
+        public boolean isValid() {
+            return failure == null;
+        }
+    }
+
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String CHECKPOINTS_FILE = "checkpoints";
+    private static final String LOCK_FILE = "lock";
+    private static final byte[] EMPTY_HASH = new byte[Segment.HASH_LENGTH];
+
+    private final Path directory;
+    private final PrivateKey checkpointKey;
+    private final byte[] checkpointFingerprint;
+    private final Durability durability;
+    private final long segmentSize;
+    private final int checkpointInterval;
+    private final Clock clock;
+    private final MessageDigest sha256 = DigestUtils.newDigest();
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private FileChannel lockChannel;
+    private FileChannel checkpointChannel;
+    private byte[] headHash = EMPTY_HASH;
+    private long size;
+    private long lastTimestamp;
+    private boolean closed;
+
+    private SignatureLog(final Path directory, final PrivateKey checkpointKey, final PublicKey checkpointPublicKey,
+                         final Durability durability, final long segmentSize, final int checkpointInterval,
+                         final Clock clock) {
+        this.directory = directory;
+        this.checkpointKey = checkpointKey;
+        this.checkpointFingerprint = checkpointPublicKey == null ? null : KeyUtils.fingerprint(checkpointPublicKey);
+        this.durability = durability;
+        this.segmentSize = segmentSize;
+        this.checkpointInterval = checkpointInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens a log for appending, creating it if needed. Checkpoints are signed with the given key pair.
+     *
+     * @param directory  the directory of the log
+     * @param privateKey the private key signing the checkpoints
+     * @param publicKey  the matching public key, whose fingerprint is recorded in the checkpoints
+     * @param durability the durability of the appends
+     * @return the log
+     * @throws FileOperationException if the log cannot be opened or is already opened for appending
+     */
+    public static SignatureLog open(final Path directory, final PrivateKey privateKey, final PublicKey publicKey,
+                                    final Durability durability) {
+        return open(directory, privateKey, publicKey, durability, Constants.LOG_SEGMENT_SIZE,
+                Constants.LOG_CHECKPOINT_INTERVAL, Clock.systemUTC());
+    }
+
+    /**
+     * Opens a log for appending, with explicit sizes and clock.
+     *
+     * @param directory          the directory of the log
+     * @param privateKey         the private key signing the checkpoints
+     * @param publicKey          the matching public key
+     * @param durability         the durability of the appends
+     * @param segmentSize        the size in bytes above which a new segment is started
+     * @param checkpointInterval the number of entries between two checkpoints
+     * @param clock              the clock timestamping the entries
+     * @return the log
+     */
+    static SignatureLog open(final Path directory, final PrivateKey privateKey, final PublicKey publicKey,
+                             final Durability durability, final long segmentSize, final int checkpointInterval,
+                             final Clock clock) {
+        if (privateKey == null || publicKey == null) {
+            throw new KeyOperationException("Les clés privée et publique sont requises pour écrire dans le journal");
+        }
+        final SignatureLog log = new SignatureLog(directory, privateKey, publicKey, durability, segmentSize,
+                checkpointInterval, clock);
+        try {
+            Files.createDirectories(directory);
+            log.lock();
+            log.load(true);
+        } catch (IOException | RuntimeException e) {
+            log.release();
+            if (e instanceof CachetException cachetException) {
+                throw cachetException;
+            }
+            throw new FileOperationException("Impossible d'ouvrir le journal : " + directory, e);
+        }
+        return log;
+    }
+
+    /**
+     * Opens an existing log for queries and audits.
+     *
+     * @param directory the directory of the log
+     * @return the log
+     * @throws FileOperationException if the log does not exist or cannot be read
+     */
+    public static SignatureLog openReadOnly(final Path directory) {
+        if (!Files.isDirectory(directory)) {
+            throw new FileOperationException("Le journal n'existe pas : " + directory);
+        }
+        final SignatureLog log = new SignatureLog(directory, null, null, Durability.NONE, Long.MAX_VALUE,
+                Integer.MAX_VALUE, Clock.systemUTC());
+        try {
+            log.load(false);
+        } catch (IOException | RuntimeException e) {
+            log.release();
+            if (e instanceof CachetException cachetException) {
+                throw cachetException;
+            }
+            throw new FileOperationException("Impossible d'ouvrir le journal : " + directory, e);
+        }
+        return log;
+    }
+
+    /**
+     * Appends an entry, timestamped with the current time. Timestamps never go backwards, even if the clock does.
+     *
+     * @param digest         the SHA-256 digest of the signed content
+     * @param keyFingerprint the fingerprint of the public key matching the signing key
+     * @param signature      the signature
+     * @return the appended entry
+     * @throws SignatureOperationException if a value has an invalid length
+     * @throws FileOperationException      if the entry cannot be written
+     */
+    public synchronized LogEntry append(final byte[] digest, final byte[] keyFingerprint, final byte[] signature) {
+        requireWritable();
+        if (digest == null || digest.length != Segment.HASH_LENGTH
+                || keyFingerprint == null || keyFingerprint.length != Segment.HASH_LENGTH) {
+            throw new SignatureOperationException("Le condensat et l'empreinte de clé doivent être des SHA-256");
+        }
+        if (signature == null || signature.length == 0 || signature.length > 0xFFFF) {
+            throw new SignatureOperationException("Taille de signature invalide pour le journal");
+        }
+
+        final long timestamp = Math.max(clock.millis(), lastTimestamp);
+        final byte[] body = Segment.encode(timestamp, digest, keyFingerprint, signature);
+        final byte[] hash = Segment.chain(sha256, headHash, body);
+        activeSegment().append(body, hash);
+        final LogEntry entry = Segment.decode(size, body);
+        headHash = hash;
+        lastTimestamp = timestamp;
+        size++;
+
+        if (activeSegment().byteSize() >= segmentSize) {
+            roll();
+        }
+        if (size - lastCheckpointSize() >= checkpointInterval) {
+            checkpoint();
+        }
+        return entry;
+    }
+
+    /**
+     * Signs the current head of the log into a checkpoint, unless the last checkpoint already covers it.
+     * The time index of the active segment is written first, so the entries covered by a checkpoint are always
+     * indexed on disk.
+     *
+     * @return the latest checkpoint
+     * @throws FileOperationException if the checkpoint cannot be written
+     */
+    public synchronized Checkpoint checkpoint() {
+        requireWritable();
+        if (!checkpoints.isEmpty() && lastCheckpointSize() == size) {
+            return checkpoints.get(checkpoints.size() - 1);
+        }
+        final Segment active = activeSegment();
+        if (durability != Durability.NONE) {
+            active.force();
+        }
+        active.writeIndex(durability);
+        final Instant timestamp = Instant.ofEpochMilli(Math.max(clock.millis(), lastTimestamp));
+        final byte[] signature = SignatureUtils.sign(
+                Checkpoint.signedBytes(size, timestamp, headHash, checkpointFingerprint), checkpointKey);
+        final Checkpoint checkpoint = new Checkpoint(size, timestamp, headHash, checkpointFingerprint, signature);
+        writeCheckpoint(checkpoint);
+        checkpoints.add(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Returns the number of entries in the log.
+     *
+     * @return the number of entries
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Returns the checkpoints of the log, oldest first.
+     *
+     * @return the checkpoints
+     */
+    public synchronized List<Checkpoint> getCheckpoints() {
+        return Collections.unmodifiableList(new ArrayList<>(checkpoints));
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param index the index of the entry
+     * @return the entry
+     * @throws IndexOutOfBoundsException if there is no such entry
+     * @throws FileOperationException    if the entry cannot be read
+     */
+    public synchronized LogEntry get(final long index) {
+        final Segment segment = segmentOf(index);
+        return segment.read((int) (index - segment.baseIndex()));
+    }
+
+    /**
+     * Finds the entries of a content, i.e. every signature recorded for it.
+     *
+     * @param digest the SHA-256 digest of the content
+     * @return the entries, oldest first
+     * @throws FileOperationException if an entry cannot be read
+     */
+    public synchronized List<LogEntry> findByDigest(final byte[] digest) {
+        final List<LogEntry> entries = new ArrayList<>();
+        for (final Segment segment : segments) {
+            for (final int position : segment.positionsOf(digest)) {
+                entries.add(segment.read(position));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the entries appended during a time range.
+     *
+     * @param from  the start of the range, inclusive
+     * @param to    the end of the range, exclusive
+     * @param limit the maximum number of entries to return
+     * @return the entries, oldest first
+     * @throws FileOperationException if an entry cannot be read
+     */
+    public synchronized List<LogEntry> findByTime(final Instant from, final Instant to, final int limit) {
+        final long start = from.toEpochMilli();
+        final long end = to.toEpochMilli();
+        final List<LogEntry> entries = new ArrayList<>();
+
+        // first segment whose last entry is not older than the start of the range
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final Segment segment = segments.get(middle);
+            if (segment.count() == 0 || segment.timestamp(segment.count() - 1) >= start) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        for (int i = low; i < segments.size() && entries.size() < limit; i++) {
+            final Segment segment = segments.get(i);
+            for (int position = segment.firstAtOrAfter(start);
+                 position < segment.count() && entries.size() < limit; position++) {
+                if (segment.timestamp(position) >= end) {
+                    return entries;
+                }
+                entries.add(segment.read(position));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Checks the integrity of the whole log: the checksums and chain of every entry, the consistency of the
+     * indexes, and the signature of every checkpoint.
+     *
+     * @param publicKey the public key the checkpoints must be signed with
+     * @return the outcome of the audit
+     * @throws FileOperationException if the log cannot be read
+     */
+    public synchronized Audit audit(final PublicKey publicKey) {
+        final MessageDigest chainDigest = DigestUtils.newDigest();
+        byte[] hash = EMPTY_HASH;
+        long expectedIndex = 0;
+        long previousTimestamp = Long.MIN_VALUE;
+        for (final Segment segment : segments) {
+            if (segment.baseIndex() != expectedIndex) {
+                return new Audit(expectedIndex, 0, "segment manquant avant l'entrée " + segment.baseIndex());
+            }
+            final byte[][] digests = new byte[segment.count()][];
+            for (int position = 0; position < segment.count(); position++) {
+                final long index = segment.baseIndex() + position;
+                final byte[] body;
+                try {
+                    body = segment.readBody(segment.offset(position));
+                } catch (FileOperationException e) {
+                    return new Audit(index, 0, e.getMessage());
+                }
+                final LogEntry entry = Segment.decode(index, body);
+                hash = Segment.chain(chainDigest, hash, body);
+                if (!Arrays.equals(hash, segment.chainHash(position))) {
+                    return new Audit(index, 0, "chaînage rompu à l'entrée " + index);
+                }
+                final long timestamp = entry.timestamp().toEpochMilli();
+                if (timestamp != segment.timestamp(position) || timestamp < previousTimestamp) {
+                    return new Audit(index, 0, "horodatage incohérent à l'entrée " + index);
+                }
+                if (!Arrays.equals(entry.digest(), segment.digest(position))) {
+                    return new Audit(index, 0, "index temporel incohérent à l'entrée " + index);
+                }
+                previousTimestamp = timestamp;
+                digests[position] = entry.digest();
+            }
+            if (segment.isSealed()) {
+                byte[] previous = null;
+                for (int rank = 0; rank < segment.count(); rank++) {
+                    final Map.Entry<byte[], Integer> digestEntry = segment.digestEntry(rank);
+                    final int position = digestEntry.getValue();
+                    if (position < 0 || position >= segment.count()
+                            || !Arrays.equals(digestEntry.getKey(), digests[position])
+                            || (previous != null && Arrays.compareUnsigned(previous, digestEntry.getKey()) > 0)) {
+                        return new Audit(expectedIndex, 0, "index des condensats incohérent dans le segment "
+                                + segment.baseIndex());
+                    }
+                    previous = digestEntry.getKey();
+                }
+            }
+            expectedIndex += segment.count();
+        }
+
+        final byte[] fingerprint = KeyUtils.fingerprint(publicKey);
+        int verified = 0;
+        for (final Checkpoint checkpoint : checkpoints) {
+            if (!Arrays.equals(fingerprint, checkpoint.keyFingerprint())) {
+                return new Audit(expectedIndex, verified, "point de contrôle signé par une autre clé (taille "
+                        + checkpoint.size() + ")");
+            }
+            if (!SignatureUtils.verify(checkpoint.signedBytes(), checkpoint.signature(), publicKey)) {
+                return new Audit(expectedIndex, verified, "signature invalide du point de contrôle (taille "
+                        + checkpoint.size() + ")");
+            }
+            if (checkpoint.size() > expectedIndex) {
+                return new Audit(expectedIndex, verified, "entrées manquantes : le point de contrôle couvre "
+                        + checkpoint.size() + " entrées");
+            }
+            final byte[] expectedHead = checkpoint.size() == 0 ? EMPTY_HASH : chainHashAt(checkpoint.size() - 1);
+            if (!Arrays.equals(expectedHead, checkpoint.headHash())) {
+                return new Audit(expectedIndex, verified, "le journal ne correspond pas au point de contrôle (taille "
+                        + checkpoint.size() + ")");
+            }
+            verified++;
+        }
+        return new Audit(expectedIndex, verified, null);
+    }
+
+    /**
+     * Writes a last checkpoint if entries were appended since the previous one, then closes the log.
+     *
+     * @throws FileOperationException if the last checkpoint cannot be written
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (checkpointKey != null && size > lastCheckpointSize()) {
+                checkpoint();
+            }
+        } finally {
+            closed = true;
+            release();
+        }
+    }
+
+    /**
+     * Loads the segments and the checkpoints. In writable mode, a torn tail is cut off, a full last segment is
+     * sealed and an empty segment is created if needed.
+     *
+     * @param writable true to prepare the log for appending
+     * @throws IOException if the directory cannot be listed
+     */
+    private void load(final boolean writable) throws IOException {
+        final List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_EXTENSION)).sorted().toList();
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            final Path file = files.get(i);
+            final boolean last = i == files.size() - 1;
+            final Segment segment = Files.exists(Segment.indexFile(file, ".dig"))
+                    ? Segment.openSealed(file, baseIndexOf(file))
+                    : Segment.openUnsealed(file, writable && last, lastChainHash(), sha256);
+            segments.add(segment);
+            if (segment.baseIndex() != size) {
+                throw new FileOperationException("Segment inattendu dans le journal : " + file);
+            }
+            size += segment.count();
+        }
+        if (writable && size > 0) {
+            final Segment last = segmentOf(size - 1);
+            headHash = last.chainHash((int) (size - 1 - last.baseIndex()));
+            lastTimestamp = last.timestamp((int) (size - 1 - last.baseIndex()));
+        }
+
+        loadCheckpoints(writable);
+        if (writable) {
+            final Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (tail != null && !tail.isSealed() && tail.byteSize() >= segmentSize && tail.count() > 0) {
+                tail.seal(durability);
+            }
+            if (tail == null || tail.isSealed()) {
+                segments.add(Segment.create(segmentFile(size), size, durability));
+            }
+        }
+    }
+
+    /**
+     * Reads the checkpoints file. In writable mode, the file is opened for appending and a torn tail is cut off.
+     *
+     * @param writable true to open the file for appending
+     * @throws IOException if the file cannot be read
+     */
+    private void loadCheckpoints(final boolean writable) throws IOException {
+        final Path file = directory.resolve(CHECKPOINTS_FILE);
+        if (!writable && !Files.exists(file)) {
+            return;
+        }
+        final FileChannel channel = writable
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            while (content.hasRemaining() && channel.read(content, content.position()) >= 0) {
+                // read the whole file
+            }
+            content.flip();
+            while (content.remaining() >= 2 * Integer.BYTES) {
+                final int length = content.getInt(content.position());
+                final int checksum = content.getInt(content.position() + Integer.BYTES);
+                if (length <= 0 || content.remaining() - 2 * Integer.BYTES < length) {
+                    break;
+                }
+                final byte[] body = new byte[length];
+                content.get(content.position() + 2 * Integer.BYTES, body);
+                if (checksum(body) != checksum) {
+                    break;
+                }
+                checkpoints.add(decodeCheckpoint(body));
+                content.position(content.position() + 2 * Integer.BYTES + length);
+            }
+            if (writable) {
+                channel.truncate(content.position());
+                checkpointChannel = channel;
+            }
+        } finally {
+            if (!writable) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Appends a checkpoint to the checkpoints file.
+     *
+     * @param checkpoint the checkpoint
+     * @throws FileOperationException if the checkpoint cannot be written
+     */
+    private void writeCheckpoint(final Checkpoint checkpoint) {
+        final byte[] body = ByteBuffer.allocate(2 * Long.BYTES + 2 * Segment.HASH_LENGTH + Short.BYTES
+                        + checkpoint.signature().length)
+                .putLong(checkpoint.size())
+                .putLong(checkpoint.timestamp().toEpochMilli())
+                .put(checkpoint.headHash())
+                .put(checkpoint.keyFingerprint())
+                .putShort((short) checkpoint.signature().length)
+                .put(checkpoint.signature())
+                .array();
+        final ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + body.length)
+                .putInt(body.length)
+                .putInt(checksum(body))
+                .put(body)
+                .flip();
+        try {
+            final long offset = checkpointChannel.size();
+            while (record.hasRemaining()) {
+                checkpointChannel.write(record, offset + record.position());
+            }
+            if (durability != Durability.NONE) {
+                checkpointChannel.force(false);
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("Impossible d'écrire le point de contrôle du journal", e);
+        }
+    }
+
+    /**
+     * Decodes a checkpoint.
+     *
+     * @param body the encoded checkpoint
+     * @return the checkpoint
+     * @throws FileOperationException if the checkpoint is malformed
+     */
+    private static Checkpoint decodeCheckpoint(final byte[] body) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(body);
+            final long size = buffer.getLong();
+            final Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+            final byte[] headHash = new byte[Segment.HASH_LENGTH];
+            final byte[] keyFingerprint = new byte[Segment.HASH_LENGTH];
+            buffer.get(headHash).get(keyFingerprint);
+            final byte[] signature = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(signature);
+            return new Checkpoint(size, timestamp, headHash, keyFingerprint, signature);
+        } catch (RuntimeException e) {
+            throw new FileOperationException("Point de contrôle du journal malformé", e);
+        }
+    }
+
+    /**
+     * Flushes and seals the active segment, then starts a new one.
+     */
+    private void roll() {
+        final Segment active = activeSegment();
+        if (durability != Durability.NONE) {
+            active.force();
+        }
+        active.seal(durability);
+        segments.add(Segment.create(segmentFile(size), size, durability));
+    }
+
+    /**
+     * Returns the chain hash of the last entry of the loaded segments.
+     *
+     * @return the chain hash, or the empty hash if there is no entry
+     */
+    private byte[] lastChainHash() {
+        return size == 0 ? EMPTY_HASH : chainHashAt(size - 1);
+    }
+
+    /**
+     * Returns the index of the first entry of a segment, as given by its name.
+     *
+     * @param file the segment file
+     * @return the index
+     * @throws FileOperationException if the name is not an index
+     */
+    private static long baseIndexOf(final Path file) {
+        final String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            throw new FileOperationException("Segment inattendu dans le journal : " + file, e);
+        }
+    }
+
+    /**
+     * Returns the chain hash of an entry.
+     *
+     * @param index the index of the entry
+     * @return the chain hash
+     */
+    private byte[] chainHashAt(final long index) {
+        final Segment segment = segmentOf(index);
+        return segment.chainHash((int) (index - segment.baseIndex()));
+    }
+
+    /**
+     * Finds the segment holding an entry.
+     *
+     * @param index the index of the entry
+     * @return the segment
+     * @throws IndexOutOfBoundsException if there is no such entry
+     */
+    private Segment segmentOf(final long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Entrée inexistante : " + index);
+        }
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).baseIndex() <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    /**
+     * Returns the segment entries are appended to.
+     *
+     * @return the last segment
+     */
+    private Segment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Returns the number of entries covered by the last checkpoint.
+     *
+     * @return the size, 0 if there is no checkpoint
+     */
+    private long lastCheckpointSize() {
+        return checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).size();
+    }
+
+    /**
+     * Returns the path of the segment starting at an index.
+     *
+     * @param baseIndex the index of the first entry
+     * @return the path
+     */
+    private Path segmentFile(final long baseIndex) {
+        return directory.resolve(String.format("%016d%s", baseIndex, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Ensures the log is open for appending.
+     *
+     * @throws FileOperationException if the log is read-only or closed
+     */
+    private void requireWritable() {
+        if (checkpointKey == null || closed) {
+            throw new FileOperationException("Le journal n'est pas ouvert en écriture : " + directory);
+        }
+    }
+
+    /**
+     * Takes the exclusive lock of the log, so a single process appends to it.
+     *
+     * @throws IOException           if the lock file cannot be opened
+     * @throws FileOperationException if another process holds the lock
+     */
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        final FileLock lock = lockChannel.tryLock();
+        if (lock == null) {
+            throw new FileOperationException("Le journal est déjà ouvert en écriture : " + directory);
+        }
+    }
+
+    /**
+     * Closes every file of the log. Closing the lock channel releases the lock.
+     */
+    private void release() {
+        segments.forEach(Segment::close);
+        for (final FileChannel channel : new FileChannel[] {checkpointChannel, lockChannel}) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // every write was already flushed as requested
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC32C of a checkpoint body.
+     *
+     * @param body the body
+     * @return the checksum
+     */
+    private static int checksum(final byte[] body) {
+        final CRC32C crc = new CRC32C();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+}
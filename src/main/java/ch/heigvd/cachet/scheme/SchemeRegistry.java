@@ -0,0 +1,223 @@
+package ch.heigvd.cachet.scheme;
+
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.exceptions.SignatureOperationException;
+
+import java.security.*;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.EdECKey;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the signature schemes available in this JVM.
+ * <p>
+ * The providers of every scheme are resolved once, when the class is loaded. Engines are then created with
+ * {@code getInstance(algorithm, provider)}, which skips the provider lookup by name performed by
+ * {@code getInstance(algorithm)} on every call.
+ */
+public final class SchemeRegistry {
+    /**
+     * Providers resolved for a scheme.
+     *
+     * @param signature        the provider of the signature engine
+     * @param keyFactory       the provider of the key factory
+     * @param keyPairGenerator the provider of the key pair generator
+     */
+    private record Providers(Provider signature, Provider keyFactory, Provider keyPairGenerator) {}
+
+    /**
+     * Providers of the available schemes, in declaration order.
+     */
+    private static final Map<SignatureScheme, Providers> PROVIDERS = resolveProviders();
+
+    /**
+     * Domain parameters of the P-256 curve, used to recognize ECDSA P-256 keys.
+     */
+    private static final ECParameterSpec P256_PARAMETERS = resolveP256Parameters();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private SchemeRegistry() {}
+
+    /**
+     * Returns the schemes available in this JVM.
+     *
+     * @return the schemes, in declaration order
+     */
+    public static List<SignatureScheme> available() {
+        return Collections.unmodifiableList(new ArrayList<>(PROVIDERS.keySet()));
+    }
+
+    /**
+     * Tells whether a scheme is available in this JVM.
+     *
+     * @param scheme the scheme
+     * @return true if the scheme can be used
+     */
+    public static boolean isAvailable(final SignatureScheme scheme) {
+        return PROVIDERS.containsKey(scheme);
+    }
+
+    /**
+     * Finds a scheme by its display name, as written in envelopes.
+     *
+     * @param name the name of the scheme
+     * @return the scheme
+     * @throws SignatureOperationException if no available scheme has this name
+     */
+    public static SignatureScheme forName(final String name) {
+        for (final SignatureScheme scheme : PROVIDERS.keySet()) {
+            if (scheme.getDisplayName().equals(name)) {
+                return scheme;
+            }
+        }
+        throw new SignatureOperationException("L'algorithme " + name + " n'est pas supporté");
+    }
+
+    /**
+     * Finds the scheme a key belongs to.
+     *
+     * @param key the public or private key
+     * @return the scheme
+     * @throws KeyOperationException if the key belongs to no available scheme
+     */
+    public static SignatureScheme forKey(final Key key) {
+        SignatureScheme scheme = null;
+        if (key instanceof EdECKey edKey) {
+            final String curve = edKey.getParams().getName();
+            scheme = "Ed25519".equalsIgnoreCase(curve) ? SignatureScheme.ED25519
+                    : "Ed448".equalsIgnoreCase(curve) ? SignatureScheme.ED448
+                    : null;
+        } else if (key instanceof ECKey ecKey && isP256(ecKey.getParams())) {
+            scheme = SignatureScheme.ECDSA_P256;
+        }
+        if (scheme == null || !isAvailable(scheme)) {
+            throw new KeyOperationException("Type de clé non supporté : " + (key == null ? null : key.getAlgorithm()));
+        }
+        return scheme;
+    }
+
+    /**
+     * Creates a signature engine for a scheme, from the cached provider.
+     *
+     * @param scheme the scheme
+     * @return a new, uninitialized signature engine
+     * @throws SignatureOperationException if the scheme is not available
+     */
+    public static Signature newSignature(final SignatureScheme scheme) {
+        try {
+            return Signature.getInstance(scheme.getSignatureAlgorithm(), providers(scheme).signature());
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignatureOperationException("L'algorithme de signature " + scheme.getDisplayName() +
+                    " n'est pas supporté par votre JVM", e);
+        }
+    }
+
+    /**
+     * Creates a key factory for a scheme, from the cached provider.
+     *
+     * @param scheme the scheme
+     * @return a new key factory
+     * @throws KeyOperationException if the scheme is not available
+     */
+    public static KeyFactory newKeyFactory(final SignatureScheme scheme) {
+        try {
+            return KeyFactory.getInstance(scheme.getKeyAlgorithm(), providers(scheme).keyFactory());
+        } catch (NoSuchAlgorithmException e) {
+            throw new KeyOperationException("L'algorithme " + scheme.getDisplayName() + " n'est pas supporté", e);
+        }
+    }
+
+    /**
+     * Creates a key pair generator for a scheme, from the cached provider, initialized with the scheme parameters.
+     *
+     * @param scheme the scheme
+     * @return a new key pair generator
+     * @throws KeyOperationException if the scheme is not available
+     */
+    public static KeyPairGenerator newKeyPairGenerator(final SignatureScheme scheme) {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance(scheme.getKeyAlgorithm(),
+                    providers(scheme).keyPairGenerator());
+            if (scheme.getKeyParameters() != null) {
+                generator.initialize(scheme.getKeyParameters());
+            }
+            return generator;
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new KeyOperationException("L'algorithme " + scheme.getDisplayName() +
+                    " n'est pas supporté pour la génération de clés", e);
+        }
+    }
+
+    /**
+     * Returns the providers of a scheme.
+     *
+     * @param scheme the scheme
+     * @return the providers
+     * @throws SignatureOperationException if the scheme is not available
+     */
+    private static Providers providers(final SignatureScheme scheme) {
+        final Providers providers = PROVIDERS.get(scheme);
+        if (providers == null) {
+            throw new SignatureOperationException("L'algorithme " + scheme.getDisplayName() +
+                    " n'est pas supporté par votre JVM");
+        }
+        return providers;
+    }
+
+    /**
+     * Resolves the providers of every scheme, leaving out the schemes this JVM cannot handle.
+     *
+     * @return the providers by scheme
+     */
+    private static Map<SignatureScheme, Providers> resolveProviders() {
+        final Map<SignatureScheme, Providers> providers = new EnumMap<>(SignatureScheme.class);
+        for (final SignatureScheme scheme : SignatureScheme.values()) {
+            try {
+                providers.put(scheme, new Providers(
+                        Signature.getInstance(scheme.getSignatureAlgorithm()).getProvider(),
+                        KeyFactory.getInstance(scheme.getKeyAlgorithm()).getProvider(),
+                        KeyPairGenerator.getInstance(scheme.getKeyAlgorithm()).getProvider()));
+            } catch (NoSuchAlgorithmException ignored) {
+                // the scheme is simply not available in this JVM
+            }
+        }
+        return Collections.unmodifiableMap(providers);
+    }
+
+    /**
+     * Resolves the domain parameters of the P-256 curve.
+     *
+     * @return the parameters, or null if the curve is not supported
+     */
+    private static ECParameterSpec resolveP256Parameters() {
+        try {
+            final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(SignatureScheme.ECDSA_P256.getKeyParameters());
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether EC domain parameters are those of the P-256 curve.
+     *
+     * @param parameters the parameters of a key
+     * @return true if the key is on P-256
+     */
+    private static boolean isP256(final ECParameterSpec parameters) {
+        return P256_PARAMETERS != null
+                && parameters != null
+                && P256_PARAMETERS.getCurve().equals(parameters.getCurve())
+                && P256_PARAMETERS.getGenerator().equals(parameters.getGenerator())
+                && P256_PARAMETERS.getOrder().equals(parameters.getOrder());
+    }
+}
@@ -0,0 +1,91 @@
+package ch.heigvd.cachet.scheme;
+
+import ch.heigvd.cachet.Constants;
+
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * Signature schemes supported by Cachet.
+ * <p>
+ * A scheme only describes the JCA names it relies on; resolving and caching the matching providers is the job of
+ * {@link SchemeRegistry}.
+ */
+public enum SignatureScheme {
+    /**
+     * EdDSA over Curve25519, the default scheme.
+     */
+    ED25519(Constants.SIGNATURE_ALGORITHM, "Ed25519", "Ed25519", null),
+
+    /**
+     * EdDSA over Curve448, with a higher security level at the cost of speed.
+     */
+    ED448("Ed448", "Ed448", "Ed448", null),
+
+    /**
+     * ECDSA over NIST P-256 with SHA-256, for clients limited to NIST curves. Signatures are DER-encoded.
+     */
+    ECDSA_P256("ECDSA-P256", "SHA256withECDSA", "EC", new ECGenParameterSpec("secp256r1"));
+
+    /**
+     * The scheme used when none is specified.
+     */
+    public static final SignatureScheme DEFAULT = ED25519;
+
+    private final String displayName;
+    private final String signatureAlgorithm;
+    private final String keyAlgorithm;
+    private final AlgorithmParameterSpec keyParameters;
+
+    /**
+     * Creates a scheme.
+     *
+     * @param displayName        the name of the scheme, as written in envelopes
+     * @param signatureAlgorithm the JCA name of the signature algorithm
+     * @param keyAlgorithm       the JCA name of the key algorithm
+     * @param keyParameters      the parameters of key generation, or null if the algorithm has none
+     */
+    SignatureScheme(final String displayName, final String signatureAlgorithm, final String keyAlgorithm,
+                    final AlgorithmParameterSpec keyParameters) {
+        this.displayName = displayName;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keyAlgorithm = keyAlgorithm;
+        this.keyParameters = keyParameters;
+    }
+
+    /**
+     * Returns the name of the scheme, as written in envelopes and shown to users.
+     *
+     * @return the name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Returns the JCA name of the signature algorithm.
+     *
+     * @return the algorithm name
+     */
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Returns the JCA name of the key algorithm.
+     *
+     * @return the algorithm name
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * Returns the parameters of key generation.
+     *
+     * @return the parameters, or null if the algorithm has none
+     */
+    public AlgorithmParameterSpec getKeyParameters() {
+        return keyParameters;
+    }
+}
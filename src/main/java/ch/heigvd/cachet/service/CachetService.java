@@ -0,0 +1,297 @@
+package ch.heigvd.cachet.service;
+
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.utils.DigestUtils;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.EnvelopeUtils;
+import ch.heigvd.cachet.utils.FileIOUtils;
+import ch.heigvd.cachet.utils.KeyUtils;
+import ch.heigvd.cachet.utils.SignatureUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Library entry point for signing and verifying data with keys loaded once.
+ * <p>
+ * Every operation is available synchronously, and asynchronously through a {@link CompletableFuture} running on
+ * the configured executor. Failures are reported as {@link ch.heigvd.cachet.exceptions.CachetException}, thrown
+ * directly or completing the future exceptionally. Signature engines are cached per thread by
+ * {@link SignatureUtils}, so a pool of workers never resolves the provider twice.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class CachetService implements AutoCloseable {
+    /**
+     * A signature together with the digest of the signed content, both computed from the same bytes.
+     *
+     * @param signature the signature
+     * @param digest    the SHA-256 digest of the content, see {@link DigestUtils}
+     */
+    public record SignedContent(byte[] signature, byte[] digest) {}
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final byte[] keyFingerprint;
+    private Executor executor;
+    private ExecutorService ownedExecutor;
+    private boolean closed;
+
+    /**
+     * Creates a service running asynchronous operations on an internal pool sized to the available processors.
+     *
+     * @param privateKey the private key used for signing, or null for a verification-only service
+     * @param publicKey  the public key used for verification, or null for a signing-only service
+     */
+    public CachetService(final PrivateKey privateKey, final PublicKey publicKey) {
+        this(privateKey, publicKey, null);
+    }
+
+    /**
+     * Creates a service running asynchronous operations on the given executor.
+     *
+     * @param privateKey the private key used for signing, or null for a verification-only service
+     * @param publicKey  the public key used for verification, or null for a signing-only service
+     * @param executor   the executor for asynchronous operations, or null to use an internal pool
+     * @throws KeyOperationException if no key is provided
+     */
+    public CachetService(final PrivateKey privateKey, final PublicKey publicKey, final Executor executor) {
+        if (privateKey == null && publicKey == null) {
+            throw new KeyOperationException("Au moins une clé doit être fournie");
+        }
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.keyFingerprint = publicKey == null ? null : KeyUtils.fingerprint(publicKey);
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a service from PEM key files.
+     *
+     * @param privateKeyPath the path to the private key, or null for a verification-only service
+     * @param publicKeyPath  the path to the public key, or null for a signing-only service
+     * @return the service
+     * @throws KeyOperationException if a key cannot be loaded
+     */
+    public static CachetService fromKeyFiles(final String privateKeyPath, final String publicKeyPath) {
+        return new CachetService(
+                privateKeyPath == null ? null : KeyUtils.loadPrivateKey(privateKeyPath),
+                publicKeyPath == null ? null : KeyUtils.loadPublicKey(publicKeyPath));
+    }
+
+    /**
+     * Signs the remaining bytes of a buffer. The position of the buffer is left unchanged.
+     *
+     * @param data the data to sign
+     * @return the signature
+     */
+    public byte[] sign(final ByteBuffer data) {
+        return SignatureUtils.sign(data, requirePrivateKey());
+    }
+
+    /**
+     * Signs the content of a file.
+     *
+     * @param file the file to sign
+     * @return the signature
+     */
+    public byte[] sign(final Path file) {
+        final PrivateKey key = requirePrivateKey();
+        return SignatureUtils.sign(FileIOUtils.fileToBytes(file.toString()), key);
+    }
+
+    /**
+     * Signs the content of a file and computes its {@link DigestUtils digest} from the same read, so the digest
+     * always matches the signed bytes even if the file changes afterwards.
+     *
+     * @param file the file to sign
+     * @return the signature and the digest of the signed content
+     */
+    public SignedContent signWithDigest(final Path file) {
+        final PrivateKey key = requirePrivateKey();
+        final byte[] content = FileIOUtils.fileToBytes(file.toString());
+        return new SignedContent(SignatureUtils.sign(content, key), DigestUtils.digest(ByteBuffer.wrap(content)));
+    }
+
+    /**
+     * Verifies a signature against the remaining bytes of a buffer. The position of the buffer is left unchanged.
+     *
+     * @param data      the signed data
+     * @param signature the signature
+     * @return true if the signature is valid, false otherwise
+     */
+    public boolean verify(final ByteBuffer data, final byte[] signature) {
+        return SignatureUtils.verify(data, signature, requirePublicKey());
+    }
+
+    /**
+     * Verifies a signature against the content of a file.
+     *
+     * @param file      the signed file
+     * @param signature the signature
+     * @return true if the signature is valid, false otherwise
+     */
+    public boolean verify(final Path file, final byte[] signature) {
+        final PublicKey key = requirePublicKey();
+        return SignatureUtils.verify(FileIOUtils.fileToBytes(file.toString()), signature, key);
+    }
+
+    /**
+     * Signs a file into an envelope holding both the content and its signature.
+     * The fingerprint of the public key is recorded when the service has one.
+     *
+     * @param input      the file to sign
+     * @param envelope   the envelope to write
+     * @param durability what must be flushed to disk before returning
+     */
+    public void signAttached(final Path input, final Path envelope, final Durability durability) {
+        EnvelopeUtils.sign(input.toString(), envelope.toString(), requirePrivateKey(), keyFingerprint, durability);
+    }
+
+    /**
+     * Verifies an envelope, optionally extracting its content while it is verified.
+     *
+     * @param envelope the envelope to verify
+     * @param extract  the file the content is extracted to if the signature is valid, or null to discard it
+     * @return true if the signature is valid, false otherwise
+     */
+    public boolean verifyAttached(final Path envelope, final Path extract) {
+        return EnvelopeUtils.verify(envelope.toString(), requirePublicKey(),
+                extract == null ? null : extract.toString());
+    }
+
+    /**
+     * Signs the remaining bytes of a buffer asynchronously.
+     * The buffer must not be modified until the returned future completes.
+     *
+     * @param data the data to sign
+     * @return a future completed with the signature
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<byte[]> signAsync(final ByteBuffer data) {
+        return CompletableFuture.supplyAsync(() -> sign(data), executor());
+    }
+
+    /**
+     * Signs the content of a file asynchronously.
+     *
+     * @param file the file to sign
+     * @return a future completed with the signature
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<byte[]> signAsync(final Path file) {
+        return CompletableFuture.supplyAsync(() -> sign(file), executor());
+    }
+
+    /**
+     * Signs the content of a file and computes its digest asynchronously, see {@link #signWithDigest(Path)}.
+     *
+     * @param file the file to sign
+     * @return a future completed with the signature and the digest of the signed content
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<SignedContent> signWithDigestAsync(final Path file) {
+        return CompletableFuture.supplyAsync(() -> signWithDigest(file), executor());
+    }
+
+    /**
+     * Verifies a signature against the remaining bytes of a buffer asynchronously.
+     * The buffer must not be modified until the returned future completes.
+     *
+     * @param data      the signed data
+     * @param signature the signature
+     * @return a future completed with true if the signature is valid, false otherwise
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<Boolean> verifyAsync(final ByteBuffer data, final byte[] signature) {
+        return CompletableFuture.supplyAsync(() -> verify(data, signature), executor());
+    }
+
+    /**
+     * Verifies a signature against the content of a file asynchronously.
+     *
+     * @param file      the signed file
+     * @param signature the signature
+     * @return a future completed with true if the signature is valid, false otherwise
+     * @throws IllegalStateException if the service is closed
+     */
+    public CompletableFuture<Boolean> verifyAsync(final Path file, final byte[] signature) {
+        return CompletableFuture.supplyAsync(() -> verify(file, signature), executor());
+    }
+
+    /**
+     * Returns the fingerprint of the public key of this service.
+     *
+     * @return the fingerprint, or null if the service has no public key
+     */
+    public byte[] getKeyFingerprint() {
+        return keyFingerprint == null ? null : keyFingerprint.clone();
+    }
+
+    /**
+     * Shuts down the internal pool, if one was created. A caller-provided executor is left untouched.
+     * Asynchronous operations can no longer be started afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            ownedExecutor = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the executor for asynchronous operations, creating the internal pool on first use.
+     *
+     * @return the executor
+     * @throws IllegalStateException if the service is closed
+     */
+    private synchronized Executor executor() {
+        if (closed) {
+            throw new IllegalStateException("Le service est fermé");
+        }
+        if (executor == null) {
+            ownedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                final Thread thread = new Thread(runnable, "cachet-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor = ownedExecutor;
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the private key, failing if the service has none.
+     *
+     * @return the private key
+     * @throws KeyOperationException if the service has no private key
+     */
+    private PrivateKey requirePrivateKey() {
+        if (privateKey == null) {
+            throw new KeyOperationException("Aucune clé privée n'a été fournie pour la signature");
+        }
+        return privateKey;
+    }
+
+    /**
+     * Returns the public key, failing if the service has none.
+     *
+     * @return the public key
+     * @throws KeyOperationException if the service has no public key
+     */
+    private PublicKey requirePublicKey() {
+        if (publicKey == null) {
+            throw new KeyOperationException("Aucune clé publique n'a été fournie pour la vérification");
+        }
+        return publicKey;
+    }
+}
@@ -0,0 +1,156 @@
+package ch.heigvd.cachet.utils;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Atomic file writer for batches of small files, such as thousands of signatures written by parallel jobs.
+ * <p>
+ * Each file is written to a temporary file next to its target, flushed to disk through the channel it was written
+ * with (unless {@link Durability#NONE}), then atomically moved over the target, so it is visible as soon as
+ * {@link #write(byte[], String)} returns. The content of every file is flushed on its own, as the JDK offers no call
+ * flushing several files at once.
+ * <p>
+ * Grouping only applies to {@link Durability#FULL}: instead of flushing the parent directory after every file, each
+ * distinct directory is flushed once per group of files, when the group is full, on {@link #flush()} or on
+ * {@link #close()}. The names written since the last group are only durable once it is committed.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BatchFileWriter implements AutoCloseable {
+    private final Durability durability;
+    private final int groupSize;
+    private Set<Path> directories = new LinkedHashSet<>();
+    private int grouped;
+    private long written;
+    private long syncs;
+
+    /**
+     * Creates a batch writer with the default group size.
+     *
+     * @param durability what must be flushed to disk
+     */
+    public BatchFileWriter(final Durability durability) {
+        this(durability, Constants.BATCH_SYNC_GROUP_SIZE);
+    }
+
+    /**
+     * Creates a batch writer.
+     *
+     * @param durability what must be flushed to disk
+     * @param groupSize  the number of files whose directories are flushed together with {@link Durability#FULL}
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    public BatchFileWriter(final Durability durability, final int groupSize) {
+        if (durability == null) {
+            throw new IllegalArgumentException("Le niveau de durabilité ne peut pas être nul");
+        }
+        if (groupSize <= 0) {
+            throw new IllegalArgumentException("La taille des groupes doit être strictement positive");
+        }
+        this.durability = durability;
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * Writes the given content to a file, flushing the directories of the current group if it is full.
+     *
+     * @param content  the content to write to the file
+     * @param filePath the path to the file
+     * @throws FileOperationException if the file cannot be written
+     */
+    public void write(final byte[] content, final String filePath) {
+        FileIOUtils.validateFilePath(filePath);
+        FileIOUtils.validateWritableDirectory(filePath);
+        if (content == null || content.length == 0) {
+            throw new FileOperationException("Le contenu à écrire est vide ou nul");
+        }
+
+        final Path target = Paths.get(filePath).toAbsolutePath();
+        final boolean sync = durability != Durability.NONE;
+        FileIOUtils.moveAtomically(FileIOUtils.writeTempFile(content, target, sync), target);
+
+        Set<Path> group = null;
+        synchronized (this) {
+            written++;
+            if (sync) {
+                syncs++;
+            }
+            if (durability == Durability.FULL) {
+                directories.add(target.getParent());
+                if (++grouped >= groupSize) {
+                    group = takeDirectories();
+                }
+            }
+        }
+        if (group != null) {
+            syncDirectories(group);
+        }
+    }
+
+    /**
+     * Flushes the directories of the files written since the last group, with {@link Durability#FULL}.
+     */
+    public void flush() {
+        final Set<Path> group;
+        synchronized (this) {
+            group = takeDirectories();
+        }
+        syncDirectories(group);
+    }
+
+    /**
+     * Returns the number of files written to their target so far.
+     *
+     * @return the number of files
+     */
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Returns the number of flushes to disk performed so far, files and directories included.
+     *
+     * @return the number of flushes
+     */
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    /**
+     * Flushes the directories of the last group.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Takes the directories of the current group and starts a new one. Must be called while holding the lock.
+     *
+     * @return the directories to flush
+     */
+    private Set<Path> takeDirectories() {
+        final Set<Path> group = directories;
+        directories = new LinkedHashSet<>();
+        grouped = 0;
+        return group;
+    }
+
+    /**
+     * Flushes each directory of a group once.
+     *
+     * @param group the directories to flush
+     */
+    private void syncDirectories(final Set<Path> group) {
+        group.forEach(FileIOUtils::syncDirectory);
+        synchronized (this) {
+            syncs += group.size();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ch.heigvd.cachet.utils;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.exceptions.SignatureOperationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class provides the SHA-256 digest identifying a signed content, e.g. in the signature log.
+ */
+public final class DigestUtils {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private DigestUtils() {}
+
+    /**
+     * Computes the digest of the remaining bytes of a buffer. The position of the buffer is left unchanged.
+     *
+     * @param content the content
+     * @return the SHA-256 digest of the content
+     */
+    public static byte[] digest(final ByteBuffer content) {
+        final MessageDigest digest = newDigest();
+        digest.update(content.duplicate());
+        return digest.digest();
+    }
+
+    /**
+     * Computes the digest of the content of a file.
+     *
+     * @param file the file
+     * @return the SHA-256 digest of its content
+     * @throws FileOperationException if the file cannot be read
+     */
+    public static byte[] digest(final Path file) {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[Constants.STREAM_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("Erreur lors de la lecture du fichier : " + file, e);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return the digest
+     * @throws SignatureOperationException if the JVM does not support SHA-256
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(Constants.CONTENT_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignatureOperationException("L'algorithme " + Constants.CONTENT_DIGEST_ALGORITHM +
+                    " n'est pas supporté par votre JVM", e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ch.heigvd.cachet.utils;
+
+/**
+ * Durability level of an atomic file write.
+ * <p>
+ * Every level writes to a temporary file and atomically moves it over the target, so readers and concurrent
+ * writers never observe a truncated file. The levels only differ in what survives a power loss.
+ */
+public enum Durability {
+    /**
+     * No flush: the content may be lost on power loss, but the target is never truncated by a crash of the JVM.
+     */
+    NONE,
+
+    /**
+     * The content of the temporary file is flushed to disk before it is moved over the target.
+     */
+    FILE,
+
+    /**
+     * The content is flushed, and the parent directory is flushed after the move so the new name is durable too.
+     */
+    FULL
+}
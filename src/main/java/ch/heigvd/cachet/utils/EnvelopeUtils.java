@@ -0,0 +1,342 @@
+package ch.heigvd.cachet.utils;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.FileOperationException;
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.exceptions.SignatureOperationException;
+import ch.heigvd.cachet.scheme.SchemeRegistry;
+import ch.heigvd.cachet.scheme.SignatureScheme;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.*;
+import java.util.Arrays;
+
+/**
+ * Utility class for reading and writing attached signature envelopes.
+ * <p>
+ * An envelope is a single file made of a header, the payload and a trailer:
+ * <pre>
+ * magic "CCHT" | version (1 byte) | algorithm (UTF) | fingerprint length (2 bytes) | fingerprint | payload length (8 bytes)
+ * payload
+ * signature length (2 bytes) | signature
+ * </pre>
+ * The signature covers the header and the payload, so the algorithm and the length cannot be altered.
+ * Both directions stream the payload in a single pass from a single file.
+ */
+public final class EnvelopeUtils {
+    /**
+     * Magic bytes identifying an envelope.
+     */
+    private static final byte[] MAGIC = {'C', 'C', 'H', 'T'};
+
+    /**
+     * Version of the envelope format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private EnvelopeUtils() {}
+
+    /**
+     * Header of an envelope.
+     *
+     * @param algorithm      the signature algorithm
+     * @param keyFingerprint the fingerprint of the signing key, empty if unknown
+     * @param payloadLength  the length of the payload in bytes
+     */
+    public record Header(String algorithm, byte[] keyFingerprint, long payloadLength) {
+        /**
+         * Serializes the header.
+         *
+         * @return the header as a byte array
+         */
+        byte[] toBytes() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final DataOutputStream out = new DataOutputStream(bytes)) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(algorithm);
+                out.writeShort(keyFingerprint.length);
+                out.write(keyFingerprint);
+                out.writeLong(payloadLength);
+            } catch (IOException e) {
+                throw new FileOperationException("Erreur lors de la sérialisation de l'en-tête de l'enveloppe", e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Signs a file and writes it as an envelope.
+     * The envelope is written to a temporary file, then atomically moved over the target.
+     *
+     * @param inputPath      the path to the file to sign
+     * @param envelopePath   the path to the envelope to write
+     * @param privateKey     the private key to use for signing
+     * @param keyFingerprint the fingerprint of the matching public key, or null if unknown
+     * @param durability     what must be flushed to disk before returning
+     * @throws FileOperationException      if a file cannot be read or written
+     * @throws SignatureOperationException if signing fails
+     */
+    public static void sign(final String inputPath, final String envelopePath, final PrivateKey privateKey,
+                            final byte[] keyFingerprint, final Durability durability) {
+        FileIOUtils.validateInputFile(inputPath);
+        FileIOUtils.validateFilePath(envelopePath);
+        FileIOUtils.validateWritableDirectory(envelopePath);
+
+        final Path input = Paths.get(inputPath);
+        final Path target = Paths.get(envelopePath).toAbsolutePath();
+        final Path temp = FileIOUtils.createTempFile(target);
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(input), Constants.STREAM_BUFFER_SIZE);
+             final FileOutputStream file = new FileOutputStream(temp.toFile());
+             final OutputStream out = new BufferedOutputStream(file, Constants.STREAM_BUFFER_SIZE)) {
+            write(in, Files.size(input), out, privateKey, keyFingerprint);
+            out.flush();
+            if (durability != Durability.NONE) {
+                file.getFD().sync();
+            }
+        } catch (IOException e) {
+            FileIOUtils.deleteQuietly(temp);
+            throw new FileOperationException("Erreur lors de l'écriture de l'enveloppe : " + envelopePath, e);
+        } catch (RuntimeException e) {
+            FileIOUtils.deleteQuietly(temp);
+            throw e;
+        }
+        FileIOUtils.moveAtomically(temp, target);
+        if (durability == Durability.FULL) {
+            FileIOUtils.syncDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Verifies an envelope file, optionally extracting its payload.
+     * <p>
+     * The payload is extracted to a temporary file next to the target, which is atomically moved over the target
+     * only if the signature is valid. An existing file at the target is left untouched otherwise.
+     *
+     * @param envelopePath the path to the envelope
+     * @param publicKey    the public key to use for verification
+     * @param extractPath  the path where the payload is extracted, or null to discard it
+     * @return true if the signature is valid, false otherwise
+     * @throws FileOperationException      if a file cannot be read or written
+     * @throws KeyOperationException       if the key does not match the envelope fingerprint
+     * @throws SignatureOperationException if the envelope is malformed or verification fails
+     */
+    public static boolean verify(final String envelopePath, final PublicKey publicKey, final String extractPath) {
+        FileIOUtils.validateInputFile(envelopePath);
+        if (extractPath != null) {
+            FileIOUtils.validateWritableDirectory(extractPath);
+        }
+
+        final Path target = extractPath == null ? null : Paths.get(extractPath).toAbsolutePath();
+        final Path temp = target == null ? null : FileIOUtils.createTempFile(target);
+        boolean valid = false;
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(envelopePath),
+                Constants.STREAM_BUFFER_SIZE);
+             final OutputStream out = temp == null
+                     ? OutputStream.nullOutputStream()
+                     : new BufferedOutputStream(Files.newOutputStream(temp), Constants.STREAM_BUFFER_SIZE)) {
+            valid = read(in, publicKey, out);
+        } catch (IOException e) {
+            throw new FileOperationException("Erreur lors de la lecture de l'enveloppe : " + envelopePath, e);
+        } finally {
+            if (!valid && temp != null) {
+                FileIOUtils.deleteQuietly(temp);
+            }
+        }
+        if (valid && temp != null) {
+            FileIOUtils.moveAtomically(temp, target);
+        }
+        return valid;
+    }
+
+    /**
+     * Writes an envelope, signing the payload while it is copied.
+     *
+     * @param payload        the payload stream
+     * @param payloadLength  the exact number of bytes to read from the payload stream
+     * @param out            the stream the envelope is written to
+     * @param privateKey     the private key to use for signing
+     * @param keyFingerprint the fingerprint of the matching public key, or null if unknown
+     * @throws IOException                 if a stream operation fails
+     * @throws SignatureOperationException if signing fails
+     * @throws IllegalArgumentException    if a parameter is invalid
+     */
+    public static void write(final InputStream payload, final long payloadLength, final OutputStream out,
+                             final PrivateKey privateKey, final byte[] keyFingerprint) throws IOException {
+        if (payloadLength <= 0) {
+            throw new IllegalArgumentException("Les données à signer ne peuvent pas être nulles ou vides");
+        }
+        if (privateKey == null) {
+            throw new IllegalArgumentException("La clé privée ne peut pas être nulle");
+        }
+
+        final SignatureScheme scheme = SchemeRegistry.forKey(privateKey);
+        final Header header = new Header(scheme.getDisplayName(),
+                keyFingerprint == null ? new byte[0] : keyFingerprint, payloadLength);
+        final Signature signer = SchemeRegistry.newSignature(scheme);
+        try {
+            signer.initSign(privateKey);
+        } catch (InvalidKeyException e) {
+            throw new KeyOperationException("La clé privée fournie est invalide ou incompatible avec l'algorithme " +
+                    scheme.getDisplayName(), e);
+        }
+
+        final byte[] headerBytes = header.toBytes();
+        update(signer, headerBytes, headerBytes.length);
+        out.write(headerBytes);
+        copy(payload, out, signer, payloadLength);
+
+        final byte[] signature;
+        try {
+            signature = signer.sign();
+        } catch (SignatureException e) {
+            throw new SignatureOperationException("Erreur lors de la signature : " + e.getMessage(), e);
+        }
+        final DataOutputStream trailer = new DataOutputStream(out);
+        trailer.writeShort(signature.length);
+        trailer.write(signature);
+        trailer.flush();
+    }
+
+    /**
+     * Reads an envelope, streaming its payload out while verifying it.
+     * <p>
+     * The payload written to {@code payloadOut} must not be trusted before this method returns true.
+     *
+     * @param in         the stream the envelope is read from
+     * @param publicKey  the public key to use for verification
+     * @param payloadOut the stream the payload is written to
+     * @return true if the signature is valid, false otherwise
+     * @throws IOException                 if a stream operation fails
+     * @throws KeyOperationException       if the key does not match the envelope fingerprint
+     * @throws SignatureOperationException if the envelope is malformed or verification fails
+     */
+    public static boolean read(final InputStream in, final PublicKey publicKey, final OutputStream payloadOut)
+            throws IOException {
+        if (publicKey == null) {
+            throw new IllegalArgumentException("La clé publique ne peut pas être nulle");
+        }
+
+        final DataInputStream data = new DataInputStream(in);
+        final Header header = readHeader(data);
+        final SignatureScheme scheme = SchemeRegistry.forName(header.algorithm());
+        if (header.keyFingerprint().length > 0
+                && !MessageDigest.isEqual(header.keyFingerprint(), KeyUtils.fingerprint(publicKey))) {
+            throw new KeyOperationException("La clé publique ne correspond pas à l'empreinte de l'enveloppe");
+        }
+
+        if (SchemeRegistry.forKey(publicKey) != scheme) {
+            throw new KeyOperationException("La clé publique fournie est incompatible avec l'algorithme " +
+                    scheme.getDisplayName() + " de l'enveloppe");
+        }
+        final Signature verifier = SchemeRegistry.newSignature(scheme);
+        try {
+            verifier.initVerify(publicKey);
+        } catch (InvalidKeyException e) {
+            throw new KeyOperationException("La clé publique fournie est invalide ou incompatible avec l'algorithme " +
+                    scheme.getDisplayName(), e);
+        }
+
+        final byte[] headerBytes = header.toBytes();
+        update(verifier, headerBytes, headerBytes.length);
+        copy(data, payloadOut, verifier, header.payloadLength());
+        payloadOut.flush();
+
+        final byte[] signature;
+        try {
+            signature = new byte[data.readUnsignedShort()];
+            data.readFully(signature);
+        } catch (EOFException e) {
+            throw new SignatureOperationException("L'enveloppe est tronquée : signature manquante", e);
+        }
+        if (data.read() != -1) {
+            throw new SignatureOperationException("L'enveloppe contient des données après la signature");
+        }
+
+        try {
+            return verifier.verify(signature);
+        } catch (SignatureException e) {
+            throw new SignatureOperationException("Erreur lors de la vérification de la signature : " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads and validates the header of an envelope.
+     *
+     * @param data the stream positioned at the start of the envelope
+     * @return the header
+     * @throws IOException                 if a stream operation fails
+     * @throws SignatureOperationException if the header is malformed
+     */
+    private static Header readHeader(final DataInputStream data) throws IOException {
+        try {
+            final byte[] magic = new byte[MAGIC.length];
+            data.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new SignatureOperationException("Le fichier n'est pas une enveloppe Cachet");
+            }
+            final byte version = data.readByte();
+            if (version != VERSION) {
+                throw new SignatureOperationException("Version d'enveloppe non supportée : " + version);
+            }
+            final String algorithm = data.readUTF();
+            final byte[] fingerprint = new byte[data.readUnsignedShort()];
+            data.readFully(fingerprint);
+            final long payloadLength = data.readLong();
+            if (payloadLength <= 0) {
+                throw new SignatureOperationException("Longueur de contenu invalide dans l'enveloppe : " +
+                        payloadLength);
+            }
+            return new Header(algorithm, fingerprint, payloadLength);
+        } catch (EOFException e) {
+            throw new SignatureOperationException("L'enveloppe est tronquée : en-tête incomplet", e);
+        }
+    }
+
+    /**
+     * Copies exactly {@code length} bytes from a stream to another, feeding them to a signature engine.
+     *
+     * @param in        the source stream
+     * @param out       the destination stream
+     * @param signature the signature engine to update
+     * @param length    the number of bytes to copy
+     * @throws IOException                 if a stream operation fails
+     * @throws SignatureOperationException if the source ends before {@code length} bytes
+     */
+    private static void copy(final InputStream in, final OutputStream out, final Signature signature,
+                             final long length) throws IOException {
+        final byte[] buffer = new byte[Constants.STREAM_BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new SignatureOperationException("L'enveloppe est tronquée : contenu incomplet");
+            }
+            update(signature, buffer, read);
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Feeds bytes to a signature engine.
+     *
+     * @param signature the signature engine
+     * @param bytes     the bytes
+     * @param length    the number of bytes to use
+     */
+    private static void update(final Signature signature, final byte[] bytes, final int length) {
+        try {
+            signature.update(bytes, 0, length);
+        } catch (SignatureException e) {
+            throw new SignatureOperationException("Erreur lors du traitement de la signature : " + e.getMessage(), e);
+        }
+    }
+}
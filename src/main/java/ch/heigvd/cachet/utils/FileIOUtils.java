@@ -5,9 +5,15 @@ import ch.heigvd.cachet.exceptions.FileOperationException;
 import ch.heigvd.cachet.exceptions.MissingParameterException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Utility class for file input/output operations.
@@ -79,13 +85,28 @@ public final class FileIOUtils {
     }
 
     /**
-     * Writes the given content to a file at the specified path.
+     * Writes the given content to a file at the specified path, atomically and flushed to disk.
      *
      * @param content  the content to write to the file
      * @param filePath the path to the file
      * @throws FileOperationException if the file cannot be written
      */
     public static void writeToFile(final byte[] content, final String filePath) {
+        writeToFile(content, filePath, Durability.FILE);
+    }
+
+    /**
+     * Writes the given content to a file at the specified path.
+     * <p>
+     * The content is written to a temporary file in the same directory, which is then atomically moved over the
+     * target, so a crash or a concurrent writer never leaves a truncated file behind.
+     *
+     * @param content    the content to write to the file
+     * @param filePath   the path to the file
+     * @param durability what must be flushed to disk before returning
+     * @throws FileOperationException if the file cannot be written
+     */
+    public static void writeToFile(final byte[] content, final String filePath, final Durability durability) {
         validateFilePath(filePath);
         validateWritableDirectory(filePath);
 
@@ -93,10 +114,102 @@ public final class FileIOUtils {
             throw new FileOperationException("Le contenu à écrire est vide ou nul");
         }
 
-        try (final OutputStream outputStream = new FileOutputStream(filePath)) {
-            outputStream.write(content);
+        final Path target = Paths.get(filePath).toAbsolutePath();
+        final Path temp = writeTempFile(content, target, durability != Durability.NONE);
+        moveAtomically(temp, target);
+        if (durability == Durability.FULL) {
+            syncDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to the given target, so it can later be moved over it atomically.
+     * Unlike {@link Files#createTempFile}, the file gets the default permissions, as the target would.
+     *
+     * @param target the absolute path of the final file
+     * @return the path to the temporary file
+     * @throws FileOperationException if the file cannot be created
+     */
+    static Path createTempFile(final Path target) {
+        while (true) {
+            final Path temp = target.resolveSibling("." + target.getFileName() + "." +
+                    Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // name collision with a concurrent writer, try another one
+            } catch (IOException e) {
+                throw new FileOperationException("Impossible de créer un fichier temporaire pour : " + target, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the given content to a new temporary file next to the given target.
+     *
+     * @param content the content to write
+     * @param target  the absolute path of the final file
+     * @param sync    true to flush the content to disk before returning
+     * @return the path to the temporary file
+     * @throws FileOperationException if the file cannot be written
+     */
+    static Path writeTempFile(final byte[] content, final Path target, final boolean sync) {
+        final Path temp = createTempFile(target);
+        try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            return temp;
         } catch (IOException e) {
-            throw new FileOperationException("Erreur lors de l'écriture dans le fichier : " + filePath, e);
+            deleteQuietly(temp);
+            throw new FileOperationException("Erreur lors de l'écriture dans le fichier : " + target, e);
+        }
+    }
+
+    /**
+     * Atomically moves a temporary file over its target, deleting the temporary file on failure.
+     *
+     * @param temp   the path to the temporary file
+     * @param target the path to the final file
+     * @throws FileOperationException if the file cannot be moved
+     */
+    static void moveAtomically(final Path temp, final Path target) {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new FileOperationException("Impossible de remplacer atomiquement le fichier : " + target, e);
+        }
+    }
+
+    /**
+     * Flushes a directory to disk, making the names it contains durable.
+     * Platforms that cannot open a directory (e.g. Windows) are silently ignored.
+     *
+     * @param directory the path to the directory
+     */
+    public static void syncDirectory(final Path directory) {
+        try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // directories cannot be opened for synchronization on every platform
+        }
+    }
+
+    /**
+     * Deletes a file, ignoring any error.
+     *
+     * @param path the path to the file
+     */
+    static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // the original error is more relevant than the cleanup failure
         }
     }
 
@@ -124,6 +237,18 @@ public final class FileIOUtils {
         }
     }
 
+    /**
+     * Validates that a file path points to an existing, readable regular file.
+     *
+     * @param filePath the file path to validate
+     * @throws FileOperationException if the file cannot be read
+     */
+    public static void validateInputFile(final String filePath) {
+        validateFilePath(filePath);
+        validateFileExists(filePath);
+        validateFileReadable(filePath);
+    }
+
     /**
      * Validates that a file exists.
      *
@@ -2,6 +2,8 @@ package ch.heigvd.cachet.utils;
 
 import ch.heigvd.cachet.Constants;
 import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.scheme.SchemeRegistry;
+import ch.heigvd.cachet.scheme.SignatureScheme;
 
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
@@ -19,19 +21,24 @@ public final class KeyUtils {
     private KeyUtils() {}
 
     /**
-     * Generates a new key pair for signing and verification.
+     * Generates a new key pair for signing and verification with the default scheme.
      *
      * @return a new KeyPair
      * @throws KeyOperationException if key generation fails
      */
     public static KeyPair generateKeyPair() {
-        try {
-            final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(Constants.SIGNATURE_ALGORITHM);
-            return keyPairGenerator.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            throw new KeyOperationException("L'algorithme " + Constants.SIGNATURE_ALGORITHM +
-                    " n'est pas supporté pour la génération de clés", e);
-        }
+        return generateKeyPair(SignatureScheme.DEFAULT);
+    }
+
+    /**
+     * Generates a new key pair for signing and verification with the given scheme.
+     *
+     * @param scheme the signature scheme
+     * @return a new KeyPair
+     * @throws KeyOperationException if key generation fails
+     */
+    public static KeyPair generateKeyPair(final SignatureScheme scheme) {
+        return SchemeRegistry.newKeyPairGenerator(scheme).generateKeyPair();
     }
 
     /**
@@ -82,6 +89,25 @@ public final class KeyUtils {
         writeKey(filePath, publicKey, true);
     }
 
+    /**
+     * Computes the fingerprint of a public key, i.e. the SHA-256 digest of its X.509 encoding.
+     *
+     * @param publicKey the public key
+     * @return the fingerprint as a byte array
+     * @throws KeyOperationException if the fingerprint cannot be computed
+     */
+    public static byte[] fingerprint(final PublicKey publicKey) {
+        if (publicKey == null) {
+            throw new KeyOperationException("La clé publique ne peut pas être nulle");
+        }
+        try {
+            return MessageDigest.getInstance(Constants.FINGERPRINT_ALGORITHM).digest(publicKey.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            throw new KeyOperationException("L'algorithme " + Constants.FINGERPRINT_ALGORITHM +
+                    " n'est pas supporté par votre JVM", e);
+        }
+    }
+
     /**
      * Loads a key (public or private) from a file.
      *
@@ -108,23 +134,27 @@ public final class KeyUtils {
         } catch (IllegalArgumentException e) {
             throw new KeyOperationException("Le format Base64 de la clé est invalide : " + filepath, e);
         }
-        try {
-            final KeyFactory kf = KeyFactory.getInstance(Constants.SIGNATURE_ALGORITHM);
-            if (publicKey) {
-                final X509EncodedKeySpec spec = new X509EncodedKeySpec(decodedKey);
-                return kf.generatePublic(spec);
-            } else {
-                final PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(decodedKey);
-                return kf.generatePrivate(spec);
+        // the scheme is not recorded in the PEM file: try each available one, the default first
+        InvalidKeySpecException lastError = null;
+        for (final SignatureScheme scheme : SchemeRegistry.available()) {
+            try {
+                final KeyFactory kf = SchemeRegistry.newKeyFactory(scheme);
+                final Key loaded = publicKey
+                        ? kf.generatePublic(new X509EncodedKeySpec(decodedKey))
+                        : kf.generatePrivate(new PKCS8EncodedKeySpec(decodedKey));
+                if (SchemeRegistry.forKey(loaded) == scheme) {
+                    return loaded;
+                }
+            } catch (final InvalidKeySpecException e) {
+                lastError = e;
+            } catch (final KeyOperationException e) {
+                // a key of the right family on an unsupported curve, e.g. EC P-384
             }
-        } catch (final InvalidKeySpecException e) {
-            throw new KeyOperationException(
-                    "La spécification de la clé est invalide. Vérifiez que le fichier contient une clé " +
-                            (publicKey ? "publique" : "privée") + " valide au format " +
-                            (publicKey ? "X.509" : "PKCS#8") + " : " + filepath, e);
-        } catch (final NoSuchAlgorithmException e) {
-            throw new KeyOperationException("L'algorithme " + Constants.SIGNATURE_ALGORITHM + " n'est pas supporté", e);
         }
+        throw new KeyOperationException(
+                "La spécification de la clé est invalide. Vérifiez que le fichier contient une clé " +
+                        (publicKey ? "publique" : "privée") + " valide au format " +
+                        (publicKey ? "X.509" : "PKCS#8") + " : " + filepath, lastError);
     }
 
     /**
@@ -1,15 +1,26 @@
 package ch.heigvd.cachet.utils;
 
-import ch.heigvd.cachet.Constants;
 import ch.heigvd.cachet.exceptions.SignatureOperationException;
 import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.scheme.SchemeRegistry;
+import ch.heigvd.cachet.scheme.SignatureScheme;
 
+import java.nio.ByteBuffer;
 import java.security.*;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * This class provides methods for signing data and verifying signatures.
  */
 public final class SignatureUtils {
+    /**
+     * Signature engines of the current thread by scheme, reused across operations to avoid creating them each time.
+     * Engines are not thread-safe, hence one set per thread.
+     */
+    private static final ThreadLocal<Map<SignatureScheme, Signature>> ENGINES =
+            ThreadLocal.withInitial(() -> new EnumMap<>(SignatureScheme.class));
+
     /**
      * Private constructor to prevent instantiation.
      */
@@ -28,24 +39,39 @@ public final class SignatureUtils {
         if (data == null || data.length == 0) {
             throw new IllegalArgumentException("Les données à signer ne peuvent pas être nulles ou vides");
         }
+        return sign(ByteBuffer.wrap(data), privateKey);
+    }
+
+    /**
+     * Signs the remaining bytes of the given buffer with the provided private key.
+     * The position of the buffer is left unchanged.
+     *
+     * @param data       data to sign
+     * @param privateKey private key to use for signing
+     * @return the signature as a byte array
+     * @throws SignatureOperationException if signing fails
+     * @throws IllegalArgumentException    if data or privateKey is null
+     */
+    public static byte[] sign(final ByteBuffer data, final PrivateKey privateKey) {
+        if (data == null || !data.hasRemaining()) {
+            throw new IllegalArgumentException("Les données à signer ne peuvent pas être nulles ou vides");
+        }
         if (privateKey == null) {
             throw new IllegalArgumentException("La clé privée ne peut pas être nulle");
         }
 
+        final SignatureScheme scheme = SchemeRegistry.forKey(privateKey);
         try {
-            final Signature ecdsaSign = Signature.getInstance(Constants.SIGNATURE_ALGORITHM);
-            ecdsaSign.initSign(privateKey);
-            ecdsaSign.update(data);
+            final Signature signer = engine(scheme);
+            signer.initSign(privateKey);
+            signer.update(data.duplicate());
 
-            return ecdsaSign.sign();
+            return signer.sign();
         } catch (final SignatureException exception) {
             throw new SignatureOperationException("Erreur lors de la signature : " + exception.getMessage(), exception);
         } catch (InvalidKeyException e) {
             throw new KeyOperationException("La clé privée fournie est invalide ou incompatible avec l'algorithme " +
-                    Constants.SIGNATURE_ALGORITHM, e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new SignatureOperationException("L'algorithme de signature " +
-                    Constants.SIGNATURE_ALGORITHM + " n'est pas supporté par votre JVM", e);
+                    scheme.getDisplayName(), e);
         }
     }
 
@@ -63,6 +89,24 @@ public final class SignatureUtils {
         if (data == null || data.length == 0) {
             throw new IllegalArgumentException("Les données à vérifier ne peuvent pas être nulles ou vides");
         }
+        return verify(ByteBuffer.wrap(data), signature, publicKey);
+    }
+
+    /**
+     * Verifies the given signature against the remaining bytes of the buffer using the provided public key.
+     * The position of the buffer is left unchanged.
+     *
+     * @param data      data to verify
+     * @param signature signature to verify
+     * @param publicKey public key to use for verification
+     * @return true if the signature is valid, false otherwise
+     * @throws SignatureOperationException if verification process fails
+     * @throws IllegalArgumentException    if any parameter is null
+     */
+    public static boolean verify(final ByteBuffer data, final byte[] signature, final PublicKey publicKey) {
+        if (data == null || !data.hasRemaining()) {
+            throw new IllegalArgumentException("Les données à vérifier ne peuvent pas être nulles ou vides");
+        }
         if (signature == null || signature.length == 0) {
             throw new IllegalArgumentException("La signature ne peut pas être nulle ou vide");
         }
@@ -70,21 +114,30 @@ public final class SignatureUtils {
             throw new IllegalArgumentException("La clé publique ne peut pas être nulle");
         }
 
+        final SignatureScheme scheme = SchemeRegistry.forKey(publicKey);
         try {
-            final Signature verifier = Signature.getInstance(Constants.SIGNATURE_ALGORITHM);
+            final Signature verifier = engine(scheme);
             verifier.initVerify(publicKey);
-            verifier.update(data);
+            verifier.update(data.duplicate());
 
             return verifier.verify(signature);
-        } catch (NoSuchAlgorithmException e) {
-            throw new SignatureOperationException("L'algorithme de vérification " +
-                    Constants.SIGNATURE_ALGORITHM + " n'est pas supporté par votre JVM", e);
         } catch (InvalidKeyException e) {
             throw new KeyOperationException("La clé publique fournie est invalide ou incompatible avec l'algorithme " +
-                    Constants.SIGNATURE_ALGORITHM, e);
+                    scheme.getDisplayName(), e);
         } catch (SignatureException e) {
             throw new SignatureOperationException("Erreur lors de la vérification de la signature : " +
                     e.getMessage(), e);
         }
     }
+
+    /**
+     * Returns the signature engine of the current thread for a scheme, creating it on first use.
+     *
+     * @param scheme the scheme
+     * @return the signature engine
+     * @throws SignatureOperationException if the scheme is not supported
+     */
+    private static Signature engine(final SignatureScheme scheme) {
+        return ENGINES.get().computeIfAbsent(scheme, SchemeRegistry::newSignature);
+    }
 }
@@ -0,0 +1,92 @@
+package ch.heigvd.cachet.batch;
+
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.KeyUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.*;
+
+
+public class BatchSignerTest {
+    private Path directory;
+    private Path original;
+    private Path copy;
+    private Path sameSize;
+    private Path other;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cachet-batch");
+        original = Files.writeString(directory.resolve("original.txt"), "Hello, world!");
+        copy = Files.writeString(directory.resolve("copy.txt"), "Hello, world!");
+        sameSize = Files.writeString(directory.resolve("same-size.txt"), "Hello, World!");
+        other = Files.writeString(directory.resolve("other.txt"), "Goodbye");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testIdenticalFilesAreGrouped() {
+        final List<List<BatchSigner.FileVersion>> groups =
+                BatchSigner.groupIdentical(List.of(original, copy, sameSize, other));
+
+        assertEquals(3, groups.size());
+        assertEquals(List.of(original, copy), groups.get(0).stream().map(BatchSigner.FileVersion::file).toList());
+    }
+
+    @Test
+    public void testDuplicatesShareOneSignature() throws Exception {
+        final KeyPair keyPair = KeyUtils.generateKeyPair();
+        final BatchSigner.Summary summary;
+        try (CachetService service = new CachetService(keyPair.getPrivate(), keyPair.getPublic())) {
+            summary = new BatchSigner(service, true, Durability.NONE)
+                    .sign(BatchSigner.collectFiles(List.of(directory)));
+
+            final byte[] signature = Base64.getDecoder().decode(Files.readAllBytes(directory.resolve("copy.txt.sig")));
+            assertTrue(service.verify(copy, signature));
+        }
+
+        assertEquals(4, summary.files());
+        assertEquals(3, summary.signatures());
+        assertEquals(1, summary.signaturesSaved());
+        assertEquals("Hello, world!".length(), summary.bytesSaved());
+    }
+
+    @Test
+    public void testCopyModifiedAfterGroupingIsSignedOnItsOwn() throws Exception {
+        final KeyPair keyPair = KeyUtils.generateKeyPair();
+        final List<List<BatchSigner.FileVersion>> groups = BatchSigner.groupIdentical(List.of(original, copy));
+        Files.writeString(copy, "Hello, changed!");
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(0));
+
+        final BatchSigner.Summary summary;
+        try (CachetService service = new CachetService(keyPair.getPrivate(), keyPair.getPublic())) {
+            summary = new BatchSigner(service, true, Durability.NONE).signGroups(groups);
+
+            final byte[] signature = Base64.getDecoder().decode(Files.readAllBytes(directory.resolve("copy.txt.sig")));
+            assertTrue(service.verify(copy, signature));
+        }
+
+        assertEquals(1, groups.size());
+        assertEquals(2, summary.files());
+        assertEquals(2, summary.signatures());
+        assertEquals(0, summary.bytesSaved());
+    }
+}
@@ -0,0 +1,125 @@
+package ch.heigvd.cachet.batch;
+
+import ch.heigvd.cachet.service.CachetService;
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.KeyUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.*;
+
+
+public class WatchSignerTest {
+    private final PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+    private Path directory;
+    private Path stateFile;
+    private KeyPair keyPair;
+    private CachetService service;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cachet-watch");
+        stateFile = directory.resolve(".state");
+        keyPair = KeyUtils.generateKeyPair();
+        service = new CachetService(keyPair.getPrivate(), keyPair.getPublic());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testDroppedFileIsSigned() throws Exception {
+        final Path existing = Files.writeString(directory.resolve("existing.txt"), "Hello, world!");
+        try (WatchSigner watcher = start()) {
+            final Path dropped = Files.writeString(directory.resolve("dropped.txt"), "Goodbye");
+
+            assertTrue(service.verify(existing, awaitSignature(existing)));
+            assertTrue(service.verify(dropped, awaitSignature(dropped)));
+        }
+        assertTrue(Files.exists(stateFile));
+    }
+
+    @Test
+    public void testSignedFilesAreSkippedAfterRestart() throws Exception {
+        final Path file = Files.writeString(directory.resolve("file.txt"), "Hello, world!");
+        final Path signatureFile = directory.resolve("file.txt.sig");
+        try (WatchSigner watcher = start()) {
+            awaitSignature(file);
+        }
+        final FileTime signedAt = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(signatureFile, signedAt);
+
+        try (WatchSigner watcher = start()) {
+            awaitChecked();
+        }
+        assertEquals(signedAt, Files.getLastModifiedTime(signatureFile));
+    }
+
+    @Test
+    public void testReplacedFileIsNotSignedAgain() throws Exception {
+        final Path file = Files.writeString(directory.resolve("file.txt"), "Hello, world!");
+        final Path signatureFile = directory.resolve("file.txt.sig");
+        final FileTime signedAt = FileTime.fromMillis(0);
+        try (WatchSigner watcher = start()) {
+            awaitSignature(file);
+            final FileTime modifiedAt = Files.getLastModifiedTime(file);
+            Files.setLastModifiedTime(signatureFile, signedAt);
+
+            Files.delete(file);
+            Files.writeString(file, "Hello, world!");
+            Files.setLastModifiedTime(file, modifiedAt);
+            awaitChecked();
+        }
+        assertEquals(signedAt, Files.getLastModifiedTime(signatureFile));
+    }
+
+    /**
+     * Starts a watcher with a short debounce period on a background thread.
+     */
+    private WatchSigner start() {
+        final WatchSigner watcher = new WatchSigner(service, directory, Duration.ofMillis(100), Durability.NONE,
+                stateFile, silent);
+        final Thread thread = new Thread(watcher::run);
+        thread.setDaemon(true);
+        thread.start();
+        return watcher;
+    }
+
+    /**
+     * Drops a marker file and waits for its signature. The files touched before it have then been checked, and
+     * closing the watcher waits for any signature they caused.
+     */
+    private void awaitChecked() throws Exception {
+        awaitSignature(Files.writeString(directory.resolve("marker-" + System.nanoTime() + ".txt"), "marker"));
+    }
+
+    /**
+     * Waits for the signature of a file to be written and returns it decoded.
+     */
+    private byte[] awaitSignature(final Path file) throws Exception {
+        final Path signatureFile = file.resolveSibling(file.getFileName() + ".sig");
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!Files.exists(signatureFile)) {
+            assertTrue("signature not written: " + signatureFile, System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+        return Base64.getDecoder().decode(Files.readAllBytes(signatureFile));
+    }
+}
@@ -0,0 +1,30 @@
+package ch.heigvd.cachet.bench;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.*;
+
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesAreWithinRelativeError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1_000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertTrue(Math.abs(histogram.getPercentile(0.50) - 50_000_000) <= 50_000_000 * 0.04);
+        assertTrue(Math.abs(histogram.getPercentile(0.999) - 99_900_000) <= 99_900_000 * 0.04);
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+        for (long value : new long[] {0, 31, 32, 33, 1_000, 123_456_789}) {
+            assertTrue(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)) >= value);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ch.heigvd.cachet.bench;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.TestCase.*;
+
+
+public class PayloadDistributionTest {
+
+    @Test
+    public void testDistributionHonoursWeights() {
+        final PayloadDistribution distribution = PayloadDistribution.parse("1k:3, 2m:1");
+        final int[] picks = new int[2];
+        final Random random = new Random(1);
+        for (int i = 0; i < 40_000; i++) {
+            picks[distribution.pick(random)]++;
+        }
+
+        assertEquals(1024, distribution.getSizes()[0]);
+        assertEquals(2 * 1024 * 1024, distribution.getSizes()[1]);
+        assertTrue(Math.abs(picks[0] - 30_000) < 1_000);
+    }
+}
@@ -0,0 +1,243 @@
+package ch.heigvd.cachet.log;
+
+import ch.heigvd.cachet.utils.Durability;
+import ch.heigvd.cachet.utils.KeyUtils;
+import ch.heigvd.cachet.utils.SignatureUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.*;
+
+
+public class SignatureLogTest {
+    private static final int ENTRIES = 100;
+
+    private Path directory;
+    private KeyPair keyPair;
+    private byte[] fingerprint;
+    private long now;
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(now);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cachet-log");
+        keyPair = KeyUtils.generateKeyPair();
+        fingerprint = KeyUtils.fingerprint(keyPair.getPublic());
+        now = 1_000_000;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testEntriesAreFoundAcrossSegments() throws Exception {
+        fill();
+
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertEquals(ENTRIES, log.size());
+
+            final List<LogEntry> byDigest = log.findByDigest(digestOf(42));
+            assertEquals(1, byDigest.size());
+            assertEquals(42, byDigest.get(0).index());
+            assertTrue(SignatureUtils.verify(content(42), byDigest.get(0).signature(), keyPair.getPublic()));
+
+            final List<LogEntry> byTime = log.findByTime(Instant.ofEpochMilli(1_000_010),
+                    Instant.ofEpochMilli(1_000_020), 100);
+            assertEquals(10, byTime.size());
+            assertEquals(10, byTime.get(0).index());
+            assertEquals(19, byTime.get(9).index());
+
+            assertTrue(log.findByDigest(new byte[32]).isEmpty());
+            assertTrue(log.audit(keyPair.getPublic()).isValid());
+            assertEquals(ENTRIES / 10, log.getCheckpoints().size());
+        }
+    }
+
+    @Test
+    public void testReopenedLogContinuesTheChain() throws Exception {
+        fill();
+        try (SignatureLog log = SignatureLog.open(directory, keyPair.getPrivate(), keyPair.getPublic(),
+                Durability.NONE, 1024, 10, clock)) {
+            log.append(digestOf(ENTRIES), fingerprint, SignatureUtils.sign(content(ENTRIES), keyPair.getPrivate()));
+        }
+
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertEquals(ENTRIES + 1, log.size());
+            final SignatureLog.Audit audit = log.audit(keyPair.getPublic());
+            assertTrue(audit.failure(), audit.isValid());
+            assertEquals(ENTRIES + 1, log.getCheckpoints().get(log.getCheckpoints().size() - 1).size());
+        }
+    }
+
+    @Test
+    public void testTamperedEntryFailsAudit() throws Exception {
+        fill();
+        final Path firstSegment;
+        try (Stream<Path> files = Files.list(directory)) {
+            firstSegment = files.filter(file -> file.toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(firstSegment.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            final int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        }
+
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertFalse(log.audit(keyPair.getPublic()).isValid());
+        }
+    }
+
+    @Test
+    public void testAuditRejectsAnotherKey() throws Exception {
+        fill();
+
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertFalse(log.audit(KeyUtils.generateKeyPair().getPublic()).isValid());
+        }
+    }
+
+    @Test
+    public void testCheckpointsIndexTheActiveSegmentWithoutSealingIt() throws Exception {
+        final Path segment = directory.resolve(String.format("%016d.log", 0));
+        try (SignatureLog log = SignatureLog.open(directory, keyPair.getPrivate(), keyPair.getPublic(),
+                Durability.NONE, Long.MAX_VALUE, 10, clock)) {
+            for (int i = 0; i < 25; i++) {
+                log.append(digestOf(i), fingerprint, SignatureUtils.sign(content(i), keyPair.getPrivate()));
+                now++;
+            }
+
+            assertEquals(List.of(segment), segments());
+            assertEquals(20, indexedIn(segment));
+
+            try (SignatureLog reader = SignatureLog.openReadOnly(directory)) {
+                assertEquals(25, reader.size());
+                assertEquals(3, reader.findByDigest(digestOf(3)).get(0).index());
+                assertEquals(24, reader.findByDigest(digestOf(24)).get(0).index());
+                assertEquals(12, reader.findByTime(Instant.ofEpochMilli(1_000_012),
+                        Instant.ofEpochMilli(1_000_013), 10).get(0).index());
+            }
+        }
+
+        assertEquals(List.of(segment), segments());
+        assertEquals(25, indexedIn(segment));
+        assertFalse(Files.exists(Segment.indexFile(segment, ".dig")));
+    }
+
+    @Test
+    public void testShortRunsShareTheActiveSegment() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            try (SignatureLog log = SignatureLog.open(directory, keyPair.getPrivate(), keyPair.getPublic(),
+                    Durability.NONE, Long.MAX_VALUE, 10, clock)) {
+                log.append(digestOf(i), fingerprint, SignatureUtils.sign(content(i), keyPair.getPrivate()));
+                now++;
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            // one segment, its time index, the checkpoints and the lock
+            assertEquals(4, files.count());
+        }
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertEquals(20, log.size());
+            assertEquals(20, log.getCheckpoints().size());
+            assertEquals(7, log.findByDigest(digestOf(7)).get(0).index());
+            assertTrue(log.audit(keyPair.getPublic()).isValid());
+        }
+    }
+
+    @Test
+    public void testMismatchedTimeIndexIsRebuilt() throws Exception {
+        try (SignatureLog log = SignatureLog.open(directory, keyPair.getPrivate(), keyPair.getPublic(),
+                Durability.NONE, Long.MAX_VALUE, 10, clock)) {
+            for (int i = 0; i < 15; i++) {
+                log.append(digestOf(i), fingerprint, SignatureUtils.sign(content(i), keyPair.getPrivate()));
+                now++;
+            }
+        }
+        final Path index = Segment.indexFile(segments().get(0), ".idx");
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            final int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        }
+
+        try (SignatureLog log = SignatureLog.openReadOnly(directory)) {
+            assertEquals(15, log.size());
+            assertEquals(14, log.findByDigest(digestOf(14)).get(0).index());
+            assertTrue(log.audit(keyPair.getPublic()).isValid());
+        }
+    }
+
+    /**
+     * Appends one entry per millisecond, with segments of about seven entries and a checkpoint every ten entries.
+     */
+    private void fill() throws Exception {
+        try (SignatureLog log = SignatureLog.open(directory, keyPair.getPrivate(), keyPair.getPublic(),
+                Durability.NONE, 1024, 10, clock)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                log.append(digestOf(i), fingerprint, SignatureUtils.sign(content(i), keyPair.getPrivate()));
+                now++;
+            }
+        }
+    }
+
+    /**
+     * Returns the segment files, in log order.
+     */
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /**
+     * Counts the entries of a segment having a time index entry on disk.
+     */
+    private static long indexedIn(final Path segment) throws Exception {
+        return Files.size(Segment.indexFile(segment, ".idx")) / Segment.TIME_ENTRY_LENGTH;
+    }
+
+    private static byte[] content(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+    }
+
+    private static byte[] digestOf(final int i) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(content(i));
+    }
+}
@@ -0,0 +1,66 @@
+package ch.heigvd.cachet.scheme;
+
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.utils.KeyUtils;
+import ch.heigvd.cachet.utils.SignatureUtils;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+import static junit.framework.TestCase.*;
+
+
+public class SchemeRegistryTest {
+    private final byte[] message = "Hello, world!".getBytes();
+
+    @Test
+    public void testEverySchemeSignsAndVerifies() {
+        for (final SignatureScheme scheme : SchemeRegistry.available()) {
+            final KeyPair keyPair = KeyUtils.generateKeyPair(scheme);
+            final byte[] signature = SignatureUtils.sign(message, keyPair.getPrivate());
+
+            assertEquals(scheme, SchemeRegistry.forKey(keyPair.getPublic()));
+            assertEquals(scheme, SchemeRegistry.forName(scheme.getDisplayName()));
+            assertTrue(scheme.name(), SignatureUtils.verify(message, signature, keyPair.getPublic()));
+        }
+    }
+
+    @Test
+    public void testPemKeysAreLoadedWithTheirScheme() throws Exception {
+        final Path directory = Files.createTempDirectory("cachet-scheme");
+        try {
+            for (final SignatureScheme scheme : SchemeRegistry.available()) {
+                final KeyPair keyPair = KeyUtils.generateKeyPair(scheme);
+                final String privatePath = directory.resolve(scheme.name() + ".pem").toString();
+                final String publicPath = directory.resolve(scheme.name() + ".pub.pem").toString();
+                KeyUtils.writePrivateKey(privatePath, keyPair.getPrivate());
+                KeyUtils.writePublicKey(publicPath, keyPair.getPublic());
+
+                final PrivateKey privateKey = KeyUtils.loadPrivateKey(privatePath);
+                final PublicKey publicKey = KeyUtils.loadPublicKey(publicPath);
+
+                assertEquals(scheme, SchemeRegistry.forKey(privateKey));
+                assertTrue(scheme.name(),
+                        SignatureUtils.verify(message, SignatureUtils.sign(message, privateKey), publicKey));
+                Files.delete(Path.of(privatePath));
+                Files.delete(Path.of(publicPath));
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    @Test(expected = KeyOperationException.class)
+    public void testUnsupportedCurveIsRejected() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp384r1"));
+
+        SchemeRegistry.forKey(generator.generateKeyPair().getPublic());
+    }
+}
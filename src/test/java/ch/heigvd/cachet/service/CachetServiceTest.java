@@ -0,0 +1,77 @@
+package ch.heigvd.cachet.service;
+
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.utils.KeyUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+
+import static junit.framework.TestCase.*;
+
+
+public class CachetServiceTest {
+    private KeyPair keyPair;
+    private ByteBuffer message;
+
+    @Before
+    public void setUp() {
+        keyPair = KeyUtils.generateKeyPair();
+        message = ByteBuffer.wrap("Hello, world!".getBytes());
+    }
+
+    @Test
+    public void testAsyncSignatureIsVerified() {
+        try (CachetService service = new CachetService(keyPair.getPrivate(), keyPair.getPublic())) {
+            final boolean valid = service.signAsync(message)
+                    .thenCompose(signature -> service.verifyAsync(message, signature))
+                    .join();
+
+            assertTrue(valid);
+            assertEquals(0, message.position());
+        }
+    }
+
+    @Test
+    public void testMissingKeyFailsFuture() {
+        try (CachetService service = new CachetService(null, keyPair.getPublic(), Runnable::run)) {
+            service.signAsync(message).join();
+            fail("La signature sans clé privée aurait dû échouer");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof KeyOperationException);
+        }
+    }
+
+    @Test
+    public void testClosedServiceRejectsAsyncOperations() {
+        final CachetService service = new CachetService(keyPair.getPrivate(), keyPair.getPublic());
+        service.signAsync(message).join();
+        service.close();
+        try {
+            service.signAsync(message);
+            fail("Une opération asynchrone après la fermeture aurait dû échouer");
+        } catch (IllegalStateException e) {
+            assertNotNull(service.sign(message));
+        }
+    }
+
+    @Test
+    public void testDigestMatchesSignedContent() throws Exception {
+        final Path file = Files.createTempFile("cachet-service", ".txt");
+        try (CachetService service = new CachetService(keyPair.getPrivate(), keyPair.getPublic())) {
+            Files.write(file, message.array());
+            final CachetService.SignedContent signed = service.signWithDigestAsync(file).join();
+
+            assertTrue(service.verify(message, signed.signature()));
+            assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(message.array()), signed.digest()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
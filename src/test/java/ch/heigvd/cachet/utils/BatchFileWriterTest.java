@@ -0,0 +1,87 @@
+package ch.heigvd.cachet.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.*;
+
+
+public class BatchFileWriterTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cachet-batch");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".sig")).count();
+        }
+    }
+
+    @Test
+    public void testDirectoryFlushesAreGrouped() throws Exception {
+        try (BatchFileWriter writer = new BatchFileWriter(Durability.FULL, 3)) {
+            for (int i = 0; i < 4; i++) {
+                writer.write(("signature " + i).getBytes(), directory.resolve(i + ".sig").toString());
+            }
+            assertEquals(4, countFiles());
+            assertEquals(4, writer.getWrittenCount());
+            // four file flushes, and a single directory flush for the first group of three
+            assertEquals(5, writer.getSyncCount());
+            writer.close();
+            assertEquals(6, writer.getSyncCount());
+        }
+        assertEquals("signature 3", Files.readString(directory.resolve("3.sig")));
+    }
+
+    @Test
+    public void testFileDurabilityFlushesEachFileOnce() throws Exception {
+        try (BatchFileWriter writer = new BatchFileWriter(Durability.FILE, 3)) {
+            for (int i = 0; i < 4; i++) {
+                writer.write(("signature " + i).getBytes(), directory.resolve(i + ".sig").toString());
+                assertEquals(i + 1, countFiles());
+            }
+            writer.flush();
+            assertEquals(4, writer.getSyncCount());
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesLeaveNoTemporaryFile() throws Exception {
+        try (BatchFileWriter writer = new BatchFileWriter(Durability.FILE, 16)) {
+            IntStream.range(0, 200).parallel().forEach(i ->
+                    writer.write(("signature " + i).getBytes(), directory.resolve((i % 50) + ".sig").toString()));
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertEquals(50, paths.count());
+        }
+        assertEquals(50, countFiles());
+    }
+
+    @Test
+    public void testWriteToFileReplacesExistingFile() throws Exception {
+        final String path = directory.resolve("out.sig").toString();
+        FileIOUtils.writeToFile("first".getBytes(), path);
+        FileIOUtils.writeToFile("second".getBytes(), path, Durability.NONE);
+
+        assertEquals("second", Files.readString(directory.resolve("out.sig")));
+        assertEquals(1, countFiles());
+    }
+}
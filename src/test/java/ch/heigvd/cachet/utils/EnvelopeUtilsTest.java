@@ -0,0 +1,103 @@
+package ch.heigvd.cachet.utils;
+
+import ch.heigvd.cachet.Constants;
+import ch.heigvd.cachet.exceptions.KeyOperationException;
+import ch.heigvd.cachet.exceptions.SignatureOperationException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.*;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.*;
+
+
+public class EnvelopeUtilsTest {
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+    private byte[] message;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPair keyPair = KeyPairGenerator
+                .getInstance(Constants.SIGNATURE_ALGORITHM)
+                .generateKeyPair();
+        privateKey = keyPair.getPrivate();
+        publicKey = keyPair.getPublic();
+        message = "Hello, world!".getBytes();
+    }
+
+    private byte[] envelope(final byte[] fingerprint) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EnvelopeUtils.write(new ByteArrayInputStream(message), message.length, out, privateKey, fingerprint);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testEnvelopeRoundTrip() throws Exception {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+        assertTrue(EnvelopeUtils.read(new ByteArrayInputStream(envelope(KeyUtils.fingerprint(publicKey))),
+                publicKey, payload));
+        assertTrue(Arrays.equals(message, payload.toByteArray()));
+    }
+
+    @Test
+    public void testTamperedPayloadIsInvalid() throws Exception {
+        final byte[] envelope = envelope(null);
+        envelope[envelope.length - 64 - 2 - 1] ^= 1;
+
+        assertFalse(EnvelopeUtils.read(new ByteArrayInputStream(envelope), publicKey, OutputStream.nullOutputStream()));
+    }
+
+    @Test(expected = KeyOperationException.class)
+    public void testFingerprintMismatchIsRejected() throws Exception {
+        final PublicKey otherKey = KeyPairGenerator
+                .getInstance(Constants.SIGNATURE_ALGORITHM)
+                .generateKeyPair()
+                .getPublic();
+
+        EnvelopeUtils.read(new ByteArrayInputStream(envelope(KeyUtils.fingerprint(publicKey))),
+                otherKey, OutputStream.nullOutputStream());
+    }
+
+    @Test(expected = SignatureOperationException.class)
+    public void testTruncatedEnvelopeIsRejected() throws Exception {
+        final byte[] envelope = envelope(null);
+
+        EnvelopeUtils.read(new ByteArrayInputStream(Arrays.copyOf(envelope, envelope.length - 10)),
+                publicKey, OutputStream.nullOutputStream());
+    }
+
+    @Test
+    public void testRejectedEnvelopeLeavesExistingFileUntouched() throws Exception {
+        final Path directory = Files.createTempDirectory("cachet-envelope");
+        final Path envelope = Files.write(directory.resolve("text.cachet"), envelope(KeyUtils.fingerprint(publicKey)));
+        final Path extract = Files.writeString(directory.resolve("text.txt"), "existing");
+        final PublicKey otherKey = KeyPairGenerator
+                .getInstance(Constants.SIGNATURE_ALGORITHM)
+                .generateKeyPair()
+                .getPublic();
+        try {
+            EnvelopeUtils.verify(envelope.toString(), otherKey, extract.toString());
+            fail("La clé ne correspond pas à l'empreinte de l'enveloppe");
+        } catch (KeyOperationException e) {
+            assertEquals("existing", Files.readString(extract));
+        }
+
+        assertTrue(EnvelopeUtils.verify(envelope.toString(), publicKey, extract.toString()));
+        assertTrue(Arrays.equals(message, Files.readAllBytes(extract)));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        Files.delete(envelope);
+        Files.delete(extract);
+        Files.delete(directory);
+    }
+}